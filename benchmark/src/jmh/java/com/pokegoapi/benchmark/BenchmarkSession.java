@@ -0,0 +1,128 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.benchmark;
+
+import POGOProtos.Networking.Envelopes.AuthTicketOuterClass.AuthTicket;
+import POGOProtos.Networking.Envelopes.RequestEnvelopeOuterClass.RequestEnvelope;
+import POGOProtos.Networking.Platform.PlatformRequestTypeOuterClass.PlatformRequestType;
+import POGOProtos.Networking.Platform.Requests.SendEncryptedSignatureRequestOuterClass.SendEncryptedSignatureRequest;
+import POGOProtos.Networking.Requests.Messages.CheckAwardedBadgesMessageOuterClass.CheckAwardedBadgesMessage;
+import POGOProtos.Networking.Requests.Messages.CheckChallenge.CheckChallengeMessage;
+import POGOProtos.Networking.Requests.Messages.DownloadSettingsMessageOuterClass.DownloadSettingsMessage;
+import POGOProtos.Networking.Requests.Messages.GetHatchedEggsMessageOuterClass.GetHatchedEggsMessage;
+import POGOProtos.Networking.Requests.Messages.GetInventoryMessageOuterClass.GetInventoryMessage;
+import POGOProtos.Networking.Requests.Messages.GetPlayerMessageOuterClass.GetPlayerMessage;
+import POGOProtos.Networking.Requests.RequestTypeOuterClass.RequestType;
+import com.google.protobuf.ByteString;
+import com.pokegoapi.api.PokemonGo;
+import com.pokegoapi.main.ServerRequest;
+import com.pokegoapi.util.Time;
+import okhttp3.OkHttpClient;
+
+/**
+ * A session that never logs in, with a fixed clock, location and auth ticket, building envelopes
+ * like the request handler does.
+ */
+public class BenchmarkSession {
+	public static final long CURRENT_TIME = 1475000185000L;
+
+	private final PokemonGo api;
+	private final AuthTicket authTicket;
+	private long requestId = 1;
+
+	/**
+	 * Creates the session
+	 */
+	public BenchmarkSession() {
+		Time time = new Time() {
+			@Override
+			public long currentTimeMillis() {
+				return CURRENT_TIME;
+			}
+		};
+		api = new PokemonGo(new OkHttpClient(), time, 0x1CE35BL);
+		api.setLocation(40.758896, -73.985130, 12.5, 5.0);
+		authTicket = AuthTicket.newBuilder()
+				.setStart(ByteString.copyFrom(GoldenVectors.input(120)))
+				.setExpireTimestampMs(CURRENT_TIME + 1800000L)
+				.setEnd(ByteString.copyFrom(GoldenVectors.input(20)))
+				.build();
+	}
+
+	public PokemonGo getApi() {
+		return api;
+	}
+
+	public AuthTicket getAuthTicket() {
+		return authTicket;
+	}
+
+	/**
+	 * Builds an unsigned envelope holding a GET_PLAYER request and the common requests
+	 *
+	 * @return the envelope builder
+	 */
+	public RequestEnvelope.Builder newEnvelope() {
+		RequestEnvelope.Builder builder = RequestEnvelope.newBuilder()
+				.setStatusCode(2)
+				.setRequestId(requestId++)
+				.setAuthTicket(authTicket)
+				.setMsSinceLastLocationfix(1000)
+				.setLatitude(api.getLatitude())
+				.setLongitude(api.getLongitude())
+				.setAccuracy(api.getAccuracy());
+
+		builder.addRequests(new ServerRequest(RequestType.GET_PLAYER,
+				GetPlayerMessage.newBuilder().build()).getRequest());
+		builder.addRequests(new ServerRequest(RequestType.CHECK_CHALLENGE,
+				CheckChallengeMessage.newBuilder().build()).getRequest());
+		builder.addRequests(new ServerRequest(RequestType.GET_HATCHED_EGGS,
+				GetHatchedEggsMessage.newBuilder().build()).getRequest());
+		builder.addRequests(new ServerRequest(RequestType.GET_INVENTORY,
+				GetInventoryMessage.newBuilder().setLastTimestampMs(CURRENT_TIME - 60000L).build()).getRequest());
+		builder.addRequests(new ServerRequest(RequestType.CHECK_AWARDED_BADGES,
+				CheckAwardedBadgesMessage.newBuilder().build()).getRequest());
+		builder.addRequests(new ServerRequest(RequestType.DOWNLOAD_SETTINGS,
+				DownloadSettingsMessage.newBuilder().setHash("54b359c97e46900f87211ef6e6dd0b7f2a3ea1f5").build())
+				.getRequest());
+		return builder;
+	}
+
+	/**
+	 * Checks that the given builder holds exactly one well formed encrypted signature
+	 *
+	 * @param builder the signed envelope
+	 */
+	public static void verifySignature(RequestEnvelope.Builder builder) {
+		if (builder.getPlatformRequestsCount() != 1
+				|| builder.getPlatformRequests(0).getType() != PlatformRequestType.SEND_ENCRYPTED_SIGNATURE) {
+			throw new IllegalStateException("Envelope does not hold a single signature");
+		}
+		byte[] encrypted;
+		try {
+			encrypted = SendEncryptedSignatureRequest.parseFrom(builder.getPlatformRequests(0).getRequestMessage())
+					.getEncryptedSignature().toByteArray();
+		} catch (Exception e) {
+			throw new IllegalStateException("Signature request can not be parsed", e);
+		}
+		// the session never logs in, so the time since start is the current time
+		int prefix = ((encrypted[0] & 0xFF) << 24) | ((encrypted[1] & 0xFF) << 16)
+				| ((encrypted[2] & 0xFF) << 8) | (encrypted[3] & 0xFF);
+		if ((encrypted.length - 5) % 256 != 0 || prefix != (int) CURRENT_TIME) {
+			throw new IllegalStateException("Encrypted signature is malformed");
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.benchmark;
+
+import com.pokegoapi.util.Crypto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crypto.encrypt at the sizes signatures have without sensor info, with it and with several location fixes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CryptoBenchmark {
+	@Param({"384", "768", "1280"})
+	public int size;
+
+	private byte[] input;
+	private ByteBuffer inputBuffer;
+	private ByteBuffer output;
+	private long msSinceStart = 185000L;
+
+	/**
+	 * Checks the golden vectors and prepares the buffers
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		GoldenVectors.verifyCrypto();
+		input = GoldenVectors.input(size);
+		inputBuffer = ByteBuffer.wrap(input);
+		output = ByteBuffer.allocateDirect(Crypto.encryptedSize(size));
+	}
+
+	@Benchmark
+	public Crypto.CipherText encrypt() {
+		return Crypto.encrypt(input, msSinceStart);
+	}
+
+	/**
+	 * Encrypts into a preallocated direct buffer
+	 *
+	 * @return the result, so it is not optimized away
+	 */
+	@Benchmark
+	public ByteBuffer encryptIntoBuffer() {
+		inputBuffer.clear();
+		output.clear();
+		Crypto.encrypt(inputBuffer, msSinceStart, output);
+		return output;
+	}
+}
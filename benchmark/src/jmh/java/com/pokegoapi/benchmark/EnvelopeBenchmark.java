@@ -0,0 +1,87 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.benchmark;
+
+import POGOProtos.Networking.Envelopes.RequestEnvelopeOuterClass.RequestEnvelope;
+import com.pokegoapi.util.Signature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building, signing and serializing an envelope the way RequestHandler sends it, and serializing alone.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EnvelopeBenchmark {
+	private BenchmarkSession session;
+	private Signature.TicketSeeds seeds;
+	private RequestEnvelope envelope;
+
+	/**
+	 * Checks the golden vectors and prepares a signed envelope
+	 *
+	 * @throws Exception if signing fails
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		GoldenVectors.verifyNiaHash();
+		GoldenVectors.verifyCrypto();
+		session = new BenchmarkSession();
+		GoldenVectors.verifyEnvelope(session);
+		seeds = new Signature.TicketSeeds(session.getAuthTicket());
+		RequestEnvelope.Builder builder = session.newEnvelope();
+		Signature.setSignature(session.getApi(), builder, seeds);
+		envelope = builder.build();
+	}
+
+	/**
+	 * Builds, signs and serializes a new envelope
+	 *
+	 * @return the result, so it is not optimized away
+	 * @throws Exception if signing or serialization fails
+	 */
+	@Benchmark
+	public byte[] buildSignAndSerialize() throws Exception {
+		RequestEnvelope.Builder builder = session.newEnvelope();
+		Signature.setSignature(session.getApi(), builder, seeds);
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		builder.build().writeTo(stream);
+		return stream.toByteArray();
+	}
+
+	/**
+	 * Serializes an already signed envelope
+	 *
+	 * @return the result, so it is not optimized away
+	 * @throws Exception if signing or serialization fails
+	 */
+	@Benchmark
+	public byte[] serialize() throws Exception {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		envelope.writeTo(stream);
+		return stream.toByteArray();
+	}
+}
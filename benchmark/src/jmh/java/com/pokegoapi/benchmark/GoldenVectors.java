@@ -0,0 +1,197 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.benchmark;
+
+import POGOProtos.Networking.Envelopes.RequestEnvelopeOuterClass.RequestEnvelope;
+import com.google.protobuf.ByteString;
+import com.pokegoapi.util.Crypto;
+import com.pokegoapi.util.NiaHash;
+import com.pokegoapi.util.Signature;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Random;
+
+/**
+ * Known outputs of the hashing and encryption, recorded from the original implementations. Every benchmark checks
+ * them before measuring, so a faster implementation can only be measured once it is proven equivalent.
+ * Run {@code gradle :benchmark:verifyGoldenVectors} to only check them.
+ */
+public class GoldenVectors {
+	public static final byte[] SALT_4 = {0x61, (byte) 0xC5, 0x0E, (byte) 0x97};
+	public static final byte[] SALT_8 = {(byte) 0x8B, 0x2F, 0x5E, (byte) 0xD1, 0x40, 0x73, (byte) 0xA6, 0x19};
+
+	// input size, hash32, hash64, hash32Salt with SALT_4, hash64Salt with SALT_8
+	private static final long[][] NIA_HASH = {
+			{0, 0x4508F9B1L, 0x3916F5797C1E0CC8L, 0x64679E39L, 0x2CC7A7434013AD8CL},
+			{1, 0x43094F31L, 0xDE38CABF9D31858EL, 0xF52E85ADL, 0xF930612C7EFC27C4L},
+			{8, 0x7DBDFCECL, 0x7A06535707BBAFBBL, 0x32C75384L, 0x3BF1922C28E07968L},
+			{15, 0xD5210D00L, 0x539BC62E86BACB2EL, 0x443A74DAL, 0x505EC545BBD2058FL},
+			{16, 0x4463F141L, 0xD654239A9237D2DBL, 0x97866D45L, 0x8B0D764780384E53L},
+			{24, 0x5DD3E5C1L, 0x953195E2C8E27023L, 0x81AE5200L, 0xF00347DFF25619B6L},
+			{100, 0xE6F1EE1AL, 0xA1635C584792B242L, 0x97080E53L, 0x60E5D236B4AF776AL},
+			{127, 0xDE70983EL, 0xDE47848D00371CB3L, 0xEA6221A8L, 0xD2496A22728ADB3FL},
+			{128, 0x157F1D51L, 0x9ED5A2378BAABF66L, 0xF06F001DL, 0x7993E63E29071E05L},
+			{129, 0x38EE84FBL, 0x344384CB0CAD0030L, 0x39330E37L, 0x3F300E42FBF4A2BAL},
+			{256, 0x47DC8474L, 0xD76230B290BEB4C6L, 0xAF744A5BL, 0xC9657DE56EE99AC8L},
+			{300, 0xE3D8DCEEL, 0x8F1B89326CC355DCL, 0x8C0D3FC4L, 0xF1BC7310B7279D82L},
+			{777, 0x7E6AC1B5L, 0xAF7228D6D118E963L, 0x0CAD43EBL, 0x815148BC849B931AL},
+			{1024, 0x0964FE1CL, 0xEC420CF8E526F2E4L, 0x7A7F9F4AL, 0xDDEB21884FD01DCFL},
+	};
+
+	// input size and SHA-256 of the cipher text, encrypted with msSinceStart = 1000 * size + 123
+	private static final int[] CRYPTO_SIZES = {0, 1, 255, 256, 512, 700, 1024, 1500};
+	private static final String[] CRYPTO_SHA256 = {
+			"b1f1d0bc7fc6e9c6759bc02e17e458af53e0ed5765b703e559f8588f51a29416",
+			"dcb8d20206607696561396308d6ad9f948ef1df9f2dc8af892f0a8cb806c1d45",
+			"52d5502bc93fee465e2b716bd740c4a29d8896c3d3a4fe82240199f28da98b73",
+			"7fb749aae496cfd1074b8ba69b4c1e39958bc36a50c29893254e3c1b7f597ec6",
+			"f5998c65b5a1d71132a8493d9dcb308b1e7c243b2a5adff5c8e5a2a6f03a1e00",
+			"6b88b29edf782ada861d03b489a28899ab1ad5f53df90f8bcdaa86b9a0b48cf4",
+			"58d5e2f6db239bda41ee3057d4f872e6a355f18dd17b4ec9a60f66e100ae2b44",
+			"66af8aa321df57ea512f515602b1c98974764eafd11523738762703a1567021f",
+	};
+
+	/**
+	 * Deterministic input of the given size, the golden vectors were recorded with it
+	 *
+	 * @param size the input size
+	 * @return the input bytes
+	 */
+	public static byte[] input(int size) {
+		byte[] input = new byte[size];
+		new Random(size * 31L + 7).nextBytes(input);
+		return input;
+	}
+
+	/**
+	 * Checks all NiaHash entry points against the golden vectors
+	 */
+	public static void verifyNiaHash() {
+		for (long[] vector : NIA_HASH) {
+			byte[] input = input((int) vector[0]);
+			check("hash32", input.length, NiaHash.hash32(input), (int) vector[1]);
+			check("hash64", input.length, NiaHash.hash64(input), vector[2]);
+			check("hash32Salt", input.length, NiaHash.hash32Salt(input, SALT_4), (int) vector[3]);
+			check("hash64Salt", input.length, NiaHash.hash64Salt(input, SALT_8), vector[4]);
+			check("hash64Salt(ByteString)", input.length,
+					NiaHash.hash64Salt(ByteString.copyFrom(input), SALT_8), vector[4]);
+
+			ByteBuffer direct = ByteBuffer.allocateDirect(input.length + 3);
+			direct.position(3);
+			direct.put(input).position(3);
+			check("hash64Salt(ByteBuffer)", input.length, NiaHash.hash64Salt(direct, SALT_8), vector[4]);
+		}
+	}
+
+	/**
+	 * Checks both Crypto entry points against the golden vectors
+	 */
+	public static void verifyCrypto() {
+		for (int i = 0; i < CRYPTO_SIZES.length; i++) {
+			int size = CRYPTO_SIZES[i];
+			byte[] input = input(size);
+			long msSinceStart = 1000L * size + 123;
+
+			byte[] encrypted = Crypto.encrypt(input, msSinceStart).toByteBuffer().array();
+			check("encrypt", size, sha256(encrypted), CRYPTO_SHA256[i]);
+
+			ByteBuffer output = ByteBuffer.allocateDirect(Crypto.encryptedSize(size));
+			Crypto.encrypt(ByteBuffer.wrap(input), msSinceStart, output);
+			output.flip();
+			byte[] buffered = new byte[output.remaining()];
+			output.get(buffered);
+			check("encrypt(ByteBuffer)", size, sha256(buffered), CRYPTO_SHA256[i]);
+		}
+	}
+
+	/**
+	 * Signs an envelope of the given session and checks its signature is well formed. The signature itself holds
+	 * random values, so only its layout can be compared.
+	 *
+	 * @param session the session
+	 * @throws Exception if signing fails
+	 */
+	public static void verifySignature(BenchmarkSession session) throws Exception {
+		RequestEnvelope.Builder builder = session.newEnvelope();
+		Signature.setSignature(session.getApi(), builder);
+		BenchmarkSession.verifySignature(builder);
+
+		builder = session.newEnvelope();
+		Signature.setSignature(session.getApi(), builder, new Signature.TicketSeeds(session.getAuthTicket()));
+		BenchmarkSession.verifySignature(builder);
+	}
+
+	/**
+	 * Checks that a signed envelope survives serialization unchanged
+	 *
+	 * @param session the session
+	 * @throws Exception if signing or parsing fails
+	 */
+	public static void verifyEnvelope(BenchmarkSession session) throws Exception {
+		RequestEnvelope.Builder builder = session.newEnvelope();
+		Signature.setSignature(session.getApi(), builder);
+		RequestEnvelope envelope = builder.build();
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		envelope.writeTo(stream);
+		if (!RequestEnvelope.parseFrom(stream.toByteArray()).equals(envelope)) {
+			throw new IllegalStateException("Envelope changed during serialization");
+		}
+	}
+
+	private static void check(String name, int size, long actual, long expected) {
+		if (actual != expected) {
+			throw new IllegalStateException(name + " of " + size + " bytes returned " + Long.toHexString(actual)
+					+ ", expected " + Long.toHexString(expected));
+		}
+	}
+
+	private static void check(String name, int size, String actual, String expected) {
+		if (!actual.equals(expected)) {
+			throw new IllegalStateException(name + " of " + size + " bytes returned " + actual
+					+ ", expected " + expected);
+		}
+	}
+
+	private static String sha256(byte[] data) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+			StringBuilder builder = new StringBuilder();
+			for (byte value : digest) {
+				builder.append(String.format("%02x", value & 0xFF));
+			}
+			return builder.toString();
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Checks all golden vectors
+	 *
+	 * @param args unused
+	 * @throws Exception if any check fails
+	 */
+	public static void main(String[] args) throws Exception {
+		verifyNiaHash();
+		verifyCrypto();
+		BenchmarkSession session = new BenchmarkSession();
+		verifySignature(session);
+		verifyEnvelope(session);
+		System.out.println("All golden vectors match");
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.benchmark;
+
+import com.pokegoapi.util.NiaHash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NiaHash at the sizes of the location (24 bytes), of typical requests and of large requests.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NiaHashBenchmark {
+	@Param({"24", "128", "400", "1024"})
+	public int size;
+
+	private byte[] input;
+	private ByteBuffer buffer;
+
+	/**
+	 * Checks the golden vectors and prepares the input
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		GoldenVectors.verifyNiaHash();
+		input = GoldenVectors.input(size);
+		buffer = ByteBuffer.allocateDirect(size);
+		buffer.put(input).flip();
+	}
+
+	@Benchmark
+	public int hash32() {
+		return NiaHash.hash32(input);
+	}
+
+	@Benchmark
+	public long hash64() {
+		return NiaHash.hash64(input);
+	}
+
+	@Benchmark
+	public int hash32Salt() {
+		return NiaHash.hash32Salt(input, GoldenVectors.SALT_4);
+	}
+
+	@Benchmark
+	public long hash64Salt() {
+		return NiaHash.hash64Salt(input, GoldenVectors.SALT_8);
+	}
+
+	@Benchmark
+	public long hash64SaltDirectBuffer() {
+		return NiaHash.hash64Salt(buffer, GoldenVectors.SALT_8);
+	}
+}
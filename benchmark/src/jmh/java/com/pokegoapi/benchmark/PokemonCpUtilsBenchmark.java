@@ -0,0 +1,110 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.benchmark;
+
+import com.pokegoapi.api.pokemon.PokemonCpUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CP, max CP and power up costs for a player's pokebank and for fleet-wide planning sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PokemonCpUtilsBenchmark {
+	@Param({"250", "4096"})
+	public int size;
+
+	private int[] attack;
+	private int[] defense;
+	private int[] stamina;
+	private float[] multiplier;
+	private int[] powerups;
+
+	/**
+	 * Prepares random stats at random levels
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		Random random = new Random(42);
+		attack = new int[size];
+		defense = new int[size];
+		stamina = new int[size];
+		multiplier = new float[size];
+		powerups = new int[size];
+		for (int index = 0; index < size; index++) {
+			attack[index] = 40 + random.nextInt(300);
+			defense[index] = 40 + random.nextInt(300);
+			stamina[index] = 40 + random.nextInt(500);
+			multiplier[index] = 0.094f + random.nextFloat() * (0.7903f - 0.094f);
+			powerups[index] = random.nextInt(60);
+		}
+	}
+
+	/**
+	 * Computes the CP one pokemon at a time, to compare with the bulk method
+	 *
+	 * @return the sum of all CP
+	 */
+	@Benchmark
+	public int cp() {
+		int sum = 0;
+		for (int index = 0; index < size; index++) {
+			sum += PokemonCpUtils.getCp(attack[index], defense[index], stamina[index], multiplier[index]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public int[] cpBulk() {
+		return PokemonCpUtils.getCp(attack, defense, stamina, multiplier);
+	}
+
+	@Benchmark
+	public int[] maxCpForPlayerBulk() {
+		return PokemonCpUtils.getMaxCpForPlayer(attack, defense, stamina, 25);
+	}
+
+	@Benchmark
+	public int[] stardustCostsBulk() {
+		return PokemonCpUtils.getStartdustCostsForPowerup(multiplier, powerups);
+	}
+
+	/**
+	 * Looks up the level of each pokemon from its cp multiplier
+	 *
+	 * @return the sum of all levels
+	 */
+	@Benchmark
+	public float level() {
+		float sum = 0;
+		for (int index = 0; index < size; index++) {
+			sum += PokemonCpUtils.getLevelFromCpMultiplier(multiplier[index]);
+		}
+		return sum;
+	}
+}
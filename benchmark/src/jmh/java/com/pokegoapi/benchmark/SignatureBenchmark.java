@@ -0,0 +1,82 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.benchmark;
+
+import POGOProtos.Networking.Envelopes.RequestEnvelopeOuterClass.RequestEnvelope;
+import com.pokegoapi.util.Signature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signature.setSignature end to end on an envelope with a GET_PLAYER request and the common requests.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SignatureBenchmark {
+	private BenchmarkSession session;
+	private RequestEnvelope.Builder builder;
+	private Signature.TicketSeeds seeds;
+
+	/**
+	 * Checks the golden vectors and prepares the envelope
+	 *
+	 * @throws Exception if signing fails
+	 */
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		GoldenVectors.verifyNiaHash();
+		GoldenVectors.verifyCrypto();
+		session = new BenchmarkSession();
+		GoldenVectors.verifySignature(session);
+		builder = session.newEnvelope();
+		seeds = new Signature.TicketSeeds(session.getAuthTicket());
+	}
+
+	/**
+	 * Signs with the seeds of the session ticket, like RequestHandler does
+	 *
+	 * @return the result, so it is not optimized away
+	 * @throws Exception if signing fails
+	 */
+	@Benchmark
+	public RequestEnvelope.Builder setSignature() throws Exception {
+		builder.clearPlatformRequests();
+		Signature.setSignature(session.getApi(), builder, seeds);
+		return builder;
+	}
+
+	/**
+	 * Signs while deriving the ticket seeds again
+	 *
+	 * @return the result, so it is not optimized away
+	 * @throws Exception if signing fails
+	 */
+	@Benchmark
+	public RequestEnvelope.Builder setSignatureDerivingSeeds() throws Exception {
+		builder.clearPlatformRequests();
+		Signature.setSignature(session.getApi(), builder);
+		return builder;
+	}
+}
@@ -47,6 +47,7 @@ import com.pokegoapi.main.RequestHandler;
 import com.pokegoapi.main.ServerRequest;
 import com.pokegoapi.util.AsyncHelper;
 import com.pokegoapi.util.ClientInterceptor;
+import com.pokegoapi.util.Constant;
 import com.pokegoapi.util.SystemTimeImpl;
 import com.pokegoapi.util.Time;
 import lombok.Getter;
@@ -58,6 +59,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
 
 
 public class PokemonGo {
@@ -90,6 +92,7 @@ public class PokemonGo {
 	private Map map;
 	@Setter
 	private DeviceInfo deviceInfo;
+	private volatile SignatureOuterClass.Signature signatureTemplate;
 	@Getter
 	@Setter
 	public SensorInfo sensorInfo;
@@ -117,8 +120,9 @@ public class PokemonGo {
 	 * @param client the http client
 	 * @param time a time implementation
 	 * @param seed the seed to generate same device
+	 * @param executor the executor requests are dispatched on, can be shared between many instances
 	 */
-	public PokemonGo(OkHttpClient client, Time time, long seed) {
+	public PokemonGo(OkHttpClient client, Time time, long seed, ScheduledExecutorService executor) {
 		this.time = time;
 		this.seed = seed;
 		sessionHash = new byte[32];
@@ -126,13 +130,24 @@ public class PokemonGo {
 		client = client.newBuilder()
 				.addNetworkInterceptor(new ClientInterceptor())
 				.build();
-		requestHandler = new RequestHandler(this, client);
+		requestHandler = new RequestHandler(this, client, executor);
 		map = new Map(this);
 		longitude = Double.NaN;
 		latitude = Double.NaN;
 		altitude = Double.NaN;
 	}
 
+	/**
+	 * Instantiates a new Pokemon go.
+	 *
+	 * @param client the http client
+	 * @param time a time implementation
+	 * @param seed the seed to generate same device
+	 */
+	public PokemonGo(OkHttpClient client, Time time, long seed) {
+		this(client, time, seed, RequestHandler.getDefaultExecutor());
+	}
+
 	/**
 	 * Instantiates a new Pokemon go.
 	 * Deprecated: specify a time implementation
@@ -369,6 +384,26 @@ public class PokemonGo {
 		return deviceInfo.getDeviceInfo();
 	}
 
+	/**
+	 * Gets the parts of the signature that stay the same for every envelope of this session: the device info,
+	 * the session hash and the constant fields. It is built again whenever the device info changes.
+	 *
+	 * @return the signature template
+	 */
+	public SignatureOuterClass.Signature getSignatureTemplate() {
+		SignatureOuterClass.Signature.DeviceInfo info = getDeviceInfo();
+		SignatureOuterClass.Signature template = signatureTemplate;
+		if (template == null || template.getDeviceInfo() != info) {
+			template = SignatureOuterClass.Signature.newBuilder()
+					.setDeviceInfo(info)
+					.setSessionHash(ByteString.copyFrom(sessionHash))
+					.setUnknown25(Constant.UNK25)
+					.build();
+			signatureTemplate = template;
+		}
+		return template;
+	}
+
 	/**
 	 * Gets the sensor info
 	 *
@@ -89,6 +89,9 @@ public class DeviceInfo {
 	};
 
 	private SignatureOuterClass.Signature.DeviceInfo.Builder deviceInfoBuilder;
+	// built once and sent with every signature, until the device info changes
+	private volatile SignatureOuterClass.Signature.DeviceInfo deviceInfo;
+	private boolean builderExposed;
 
 	public DeviceInfo() {
 		deviceInfoBuilder = SignatureOuterClass.Signature.DeviceInfo.newBuilder();
@@ -205,7 +208,7 @@ public class DeviceInfo {
 	 * @param androidBoardName AndroidBoardName, for example: "angler"
 	 */
 	public void setAndroidBoardName(String androidBoardName) {
-		deviceInfoBuilder.setAndroidBoardName(androidBoardName);
+		edit().setAndroidBoardName(androidBoardName);
 	}
 
 	/**
@@ -218,7 +221,7 @@ public class DeviceInfo {
 	 * @param androidBootloader AndroidBootloader, for example: "angler-03.58"
 	 */
 	public void setAndroidBootloader(String androidBootloader) {
-		deviceInfoBuilder.setAndroidBootloader(androidBootloader);
+		edit().setAndroidBootloader(androidBootloader);
 	}
 
 	/**
@@ -231,7 +234,7 @@ public class DeviceInfo {
 	 * @param deviceBrand DeviceBrand, for example: "google"
 	 */
 	public void setDeviceBrand(String deviceBrand) {
-		deviceInfoBuilder.setDeviceBrand(deviceBrand);
+		edit().setDeviceBrand(deviceBrand);
 	}
 
 	/**
@@ -244,7 +247,7 @@ public class DeviceInfo {
 	 * @param deviceId DeviceId, for example: "****************"
 	 */
 	public void setDeviceId(String deviceId) {
-		deviceInfoBuilder.setDeviceId(deviceId);
+		edit().setDeviceId(deviceId);
 	}
 
 	/**
@@ -257,7 +260,7 @@ public class DeviceInfo {
 	 * @param deviceModel DeviceModel, for example: "Nexus 6P"
 	 */
 	public void setDeviceModel(String deviceModel) {
-		deviceInfoBuilder.setDeviceModel(deviceModel);
+		edit().setDeviceModel(deviceModel);
 	}
 
 	/**
@@ -270,7 +273,7 @@ public class DeviceInfo {
 	 * @param deviceModelBoot DeviceModelBoot, for example: "qcom"
 	 */
 	public void setDeviceModelBoot(String deviceModelBoot) {
-		deviceInfoBuilder.setDeviceModelBoot(deviceModelBoot);
+		edit().setDeviceModelBoot(deviceModelBoot);
 	}
 
 	/**
@@ -283,7 +286,7 @@ public class DeviceInfo {
 	 * @param deviceModelIdentifier DeviceModelIdentifier, for example: "angler"
 	 */
 	public void setDeviceModelIdentifier(String deviceModelIdentifier) {
-		deviceInfoBuilder.setDeviceModelIdentifier(deviceModelIdentifier);
+		edit().setDeviceModelIdentifier(deviceModelIdentifier);
 	}
 
 	/**
@@ -296,7 +299,7 @@ public class DeviceInfo {
 	 * @param firmwareBrand FirmwareBrand, for example: "angler"
 	 */
 	public void setFirmwareBrand(String firmwareBrand) {
-		deviceInfoBuilder.setFirmwareBrand(firmwareBrand);
+		edit().setFirmwareBrand(firmwareBrand);
 	}
 
 	/**
@@ -310,7 +313,7 @@ public class DeviceInfo {
 	 *                            for example: "google/angler/angler:7.0/NPD90G/3051502:user/release-keys"
 	 */
 	public void setFirmwareFingerprint(String firmwareFingerprint) {
-		deviceInfoBuilder.setFirmwareFingerprint(firmwareFingerprint);
+		edit().setFirmwareFingerprint(firmwareFingerprint);
 	}
 
 	/**
@@ -323,7 +326,7 @@ public class DeviceInfo {
 	 * @param firmwareTags FirmwareTags, for example: "release-keys"
 	 */
 	public void setFirmwareTags(String firmwareTags) {
-		deviceInfoBuilder.setFirmwareTags(firmwareTags);
+		edit().setFirmwareTags(firmwareTags);
 	}
 
 	/**
@@ -336,7 +339,7 @@ public class DeviceInfo {
 	 * @param firmwareType FirmwareType, for example: "user"
 	 */
 	public void setFirmwareType(String firmwareType) {
-		deviceInfoBuilder.setFirmwareType(firmwareType);
+		edit().setFirmwareType(firmwareType);
 	}
 
 	/**
@@ -349,7 +352,7 @@ public class DeviceInfo {
 	 * @param hardwareManufacturer HardwareManufacturer, for example: "Huawei"
 	 */
 	public void setHardwareManufacturer(String hardwareManufacturer) {
-		deviceInfoBuilder.setHardwareManufacturer(hardwareManufacturer);
+		edit().setHardwareManufacturer(hardwareManufacturer);
 	}
 
 	/**
@@ -362,7 +365,7 @@ public class DeviceInfo {
 	 * @param hardwareModel HardwareModel, for example: "Nexus 6P"
 	 */
 	public void setHardwareModel(String hardwareModel) {
-		deviceInfoBuilder.setHardwareModel(hardwareModel);
+		edit().setHardwareModel(hardwareModel);
 	}
 
 	/**
@@ -371,6 +374,9 @@ public class DeviceInfo {
 	 * @return the device info builder
 	 */
 	public SignatureOuterClass.Signature.DeviceInfo.Builder getBuilder() {
+		// the builder can be changed at any time from now on, so the device info is no longer cached
+		builderExposed = true;
+		deviceInfo = null;
 		return deviceInfoBuilder;
 	}
 
@@ -380,6 +386,18 @@ public class DeviceInfo {
 	 * @return DeviceInfo
 	 */
 	public SignatureOuterClass.Signature.DeviceInfo getDeviceInfo() {
-		return deviceInfoBuilder.build();
+		SignatureOuterClass.Signature.DeviceInfo info = deviceInfo;
+		if (info == null) {
+			info = deviceInfoBuilder.build();
+			if (!builderExposed) {
+				deviceInfo = info;
+			}
+		}
+		return info;
+	}
+
+	private SignatureOuterClass.Signature.DeviceInfo.Builder edit() {
+		deviceInfo = null;
+		return deviceInfoBuilder;
 	}
 }
@@ -20,7 +20,6 @@ import POGOProtos.Data.PokemonDataOuterClass.PokemonData;
 import POGOProtos.Enums.PokemonIdOuterClass;
 import POGOProtos.Enums.TeamColorOuterClass;
 import POGOProtos.Map.Fort.FortDataOuterClass.FortData;
-import POGOProtos.Networking.Requests.Messages.GetGymDetailsMessageOuterClass.GetGymDetailsMessage;
 import POGOProtos.Networking.Requests.Messages.FortDeployPokemonMessageOuterClass.FortDeployPokemonMessage;
 import POGOProtos.Networking.Requests.RequestTypeOuterClass.RequestType;
 import POGOProtos.Networking.Responses.GetGymDetailsResponseOuterClass.GetGymDetailsResponse;
@@ -30,12 +29,14 @@ import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.ProtocolStringList;
 import com.pokegoapi.api.PokemonGo;
+import com.pokegoapi.api.map.FortDetailsCache;
 import com.pokegoapi.api.pokemon.Pokemon;
 import com.pokegoapi.exceptions.LoginFailedException;
 import com.pokegoapi.exceptions.RemoteServerException;
 import com.pokegoapi.exceptions.AsyncRemoteServerException;
 import com.pokegoapi.main.ServerRequest;
 import com.pokegoapi.main.AsyncServerRequest;
+import com.pokegoapi.util.AsyncHelper;
 import com.pokegoapi.util.MapPoint;
 
 import java.util.ArrayList;
@@ -46,7 +47,6 @@ import rx.functions.Func1;
 
 public class Gym implements MapPoint {
 	private FortData proto;
-	private GetGymDetailsResponse details;
 	private PokemonGo api;
 
 	/**
@@ -58,7 +58,6 @@ public class Gym implements MapPoint {
 	public Gym(PokemonGo api, FortData proto) {
 		this.api = api;
 		this.proto = proto;
-		this.details = null;
 	}
 
 	public String getId() {
@@ -105,42 +104,22 @@ public class Gym implements MapPoint {
 		return new Battle(api, team, this);
 	}
 
-	private GetGymDetailsResponse details() throws LoginFailedException, RemoteServerException {
-		if (details == null) {
-			GetGymDetailsMessage reqMsg = GetGymDetailsMessage
-					.newBuilder()
-					.setGymId(this.getId())
-					.setGymLatitude(this.getLatitude())
-					.setGymLongitude(this.getLongitude())
-					.setPlayerLatitude(api.getLatitude())
-					.setPlayerLongitude(api.getLongitude())
-					.build();
-
-
-			ServerRequest serverRequest = new ServerRequest(RequestType.GET_GYM_DETAILS, reqMsg);
-			api.getRequestHandler().sendServerRequests(serverRequest);
-
-			try {
-				details = GetGymDetailsResponse.parseFrom(serverRequest.getData());
-			} catch (InvalidProtocolBufferException e) {
-				throw new RemoteServerException();
-			}
-
-		}
-
-		return details;
+	private GetGymDetailsResponse details(FortDetailsCache.Field field)
+			throws LoginFailedException, RemoteServerException {
+		return AsyncHelper.toBlocking(api.getMap().getFortDetailsCache()
+				.getGymDetailsAsync(getId(), getLatitude(), getLongitude(), field));
 	}
 
 	public String getName() throws LoginFailedException, RemoteServerException {
-		return details().getName();
+		return details(FortDetailsCache.Field.STATIC).getName();
 	}
 
 	public ProtocolStringList getUrlsList() throws LoginFailedException, RemoteServerException {
-		return details().getUrlsList();
+		return details(FortDetailsCache.Field.STATIC).getUrlsList();
 	}
 
 	public GetGymDetailsResponse.Result getResult() throws LoginFailedException, RemoteServerException {
-		return details().getResult();
+		return details(FortDetailsCache.Field.DEFENDERS).getResult();
 	}
 
 	public boolean inRange() throws LoginFailedException, RemoteServerException {
@@ -149,12 +128,12 @@ public class Gym implements MapPoint {
 	}
 
 	public String getDescription() throws LoginFailedException, RemoteServerException {
-		return details().getDescription();
+		return details(FortDetailsCache.Field.STATIC).getDescription();
 	}
 
 
 	public List<GymMembership> getGymMembers() throws LoginFailedException, RemoteServerException {
-		return details().getGymState().getMembershipsList();
+		return details(FortDetailsCache.Field.DEFENDERS).getGymState().getMembershipsList();
 	}
 
 	/**
@@ -193,6 +172,7 @@ public class Gym implements MapPoint {
 
 		ServerRequest serverRequest = new ServerRequest(RequestType.FORT_DEPLOY_POKEMON, reqMsg);
 		api.getRequestHandler().sendServerRequests(serverRequest);
+		api.getMap().getFortDetailsCache().invalidate(getId());
 
 		try {
 			return FortDeployPokemonResponse.parseFrom(serverRequest.getData()).getResult();
@@ -226,6 +206,7 @@ public class Gym implements MapPoint {
 
 				@Override
 				public FortDeployPokemonResponse.Result call(ByteString response) {
+					api.getMap().getFortDetailsCache().invalidate(getId());
 
 					try {
 						return FortDeployPokemonResponse.parseFrom(response).getResult();
@@ -78,7 +78,7 @@ public class EggIncubator {
 			throw new RemoteServerException(e);
 		}
 
-		api.getInventories().updateInventories(true);
+		api.getInventories().updateInventories();
 
 		return response.getResult();
 	}
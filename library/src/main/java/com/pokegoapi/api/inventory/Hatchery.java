@@ -30,6 +30,7 @@ import lombok.Getter;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -50,11 +51,35 @@ public class Hatchery {
 		hatchedEggs.clear();
 	}
 
+	/**
+	 * Adds an egg, replacing the egg with the same id if there is one
+	 *
+	 * @param egg the egg to add
+	 */
 	public void addEgg(EggPokemon egg) {
 		egg.setApi(api);
+		// eggs are equal by id, so drop the old state first
+		eggs.remove(egg);
 		eggs.add(egg);
 	}
 
+	/**
+	 * Removes the egg with the given id, if there is one
+	 *
+	 * @param id the id of the egg
+	 * @return true if an egg was removed
+	 */
+	public boolean removeEgg(long id) {
+		Iterator<EggPokemon> iterator = eggs.iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().getId() == id) {
+				iterator.remove();
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Adds the given hatched egg to the hatchedEggs set.
 	 * @param egg the egg to add
@@ -22,23 +22,39 @@ import POGOProtos.Inventory.InventoryItemDataOuterClass;
 import POGOProtos.Inventory.InventoryItemOuterClass;
 import POGOProtos.Inventory.Item.ItemDataOuterClass.ItemData;
 import POGOProtos.Inventory.Item.ItemIdOuterClass.ItemId;
+import POGOProtos.Networking.Requests.Messages.EvolvePokemonMessageOuterClass.EvolvePokemonMessage;
 import POGOProtos.Networking.Requests.Messages.GetInventoryMessageOuterClass.GetInventoryMessage;
+import POGOProtos.Networking.Requests.Messages.ReleasePokemonMessageOuterClass.ReleasePokemonMessage;
 import POGOProtos.Networking.Requests.RequestTypeOuterClass;
+import POGOProtos.Networking.Requests.RequestTypeOuterClass.RequestType;
+import POGOProtos.Networking.Responses.EvolvePokemonResponseOuterClass.EvolvePokemonResponse;
 import POGOProtos.Networking.Responses.GetInventoryResponseOuterClass.GetInventoryResponse;
+import POGOProtos.Networking.Responses.ReleasePokemonResponseOuterClass.ReleasePokemonResponse;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.pokegoapi.api.PokemonGo;
+import com.pokegoapi.api.map.pokemon.EvolutionResult;
 import com.pokegoapi.api.pokemon.EggPokemon;
 import com.pokegoapi.api.pokemon.Pokemon;
+import com.pokegoapi.exceptions.AsyncPokemonGoException;
 import com.pokegoapi.exceptions.LoginFailedException;
 import com.pokegoapi.exceptions.RemoteServerException;
+import com.pokegoapi.main.AsyncServerRequest;
 import com.pokegoapi.main.ServerRequest;
+import com.pokegoapi.util.AsyncHelper;
+import com.pokegoapi.util.Log;
 import lombok.Getter;
+import rx.Observable;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 
 public class Inventories {
+	private static final String TAG = Inventories.class.getSimpleName();
 
 	private final PokemonGo api;
 	@Getter
@@ -54,7 +70,7 @@ public class Inventories {
 	@Getter
 	private Hatchery hatchery;
 	@Getter
-	private long lastInventoryUpdate = 0;
+	private volatile long lastInventoryUpdate = 0;
 
 	/**
 	 * Creates Inventories and initializes content.
@@ -81,24 +97,30 @@ public class Inventories {
 	}
 
 	/**
-	 * Updates the inventories with the latest data.
+	 * Updates the inventories with the latest data. Deltas are applied incrementally, so a full update is only
+	 * needed to recover from an inventory that is known to be out of sync.
 	 *
 	 * @param forceUpdate For a full update if true
 	 * @throws LoginFailedException  the login failed exception
 	 * @throws RemoteServerException the remote server exception
 	 */
 	public void updateInventories(boolean forceUpdate) throws LoginFailedException, RemoteServerException {
-		if (forceUpdate) {
-			lastInventoryUpdate = 0;
-			itemBag.reset();
-			pokebank.reset();
-			candyjar.reset();
-			pokedex.reset();
-			incubators.clear();
-			hatchery.reset();
+		long lastTimestamp;
+		// read the timestamp together with the reset, a delta applied in between would skip the full update
+		synchronized (this) {
+			if (forceUpdate) {
+				lastInventoryUpdate = 0;
+				itemBag.reset();
+				pokebank.reset();
+				candyjar.reset();
+				pokedex.reset();
+				incubators.clear();
+				hatchery.reset();
+			}
+			lastTimestamp = lastInventoryUpdate;
 		}
 		GetInventoryMessage invReqMsg = GetInventoryMessage.newBuilder()
-				.setLastTimestampMs(lastInventoryUpdate)
+				.setLastTimestampMs(lastTimestamp)
 				.build();
 		ServerRequest inventoryRequest = new ServerRequest(RequestTypeOuterClass.RequestType.GET_INVENTORY, invReqMsg);
 		api.getRequestHandler().sendServerRequests(inventoryRequest);
@@ -114,13 +136,23 @@ public class Inventories {
 	}
 
 	/**
-	 * Updates the inventories with the latest data.
+	 * Applies an inventory delta. Items are keyed by their type and id: new ones are added, known ones are updated
+	 * in place and deleted ones are removed, so the inventories stay in sync without a full refresh.
 	 *
 	 * @param response the get inventory response
 	 */
-	public void updateInventories(GetInventoryResponse response) {
+	public synchronized void updateInventories(GetInventoryResponse response) {
 		for (InventoryItemOuterClass.InventoryItem inventoryItem
 				: response.getInventoryDelta().getInventoryItemsList()) {
+			// deleted pokemon and eggs, for example transferred pokemon or hatched eggs
+			if (inventoryItem.hasDeletedItem()) {
+				long deletedId = inventoryItem.getDeletedItem().getPokemonId();
+				if (pokebank.removePokemon(deletedId) == null) {
+					hatchery.removeEgg(deletedId);
+				}
+				continue;
+			}
+
 			InventoryItemDataOuterClass.InventoryItemData itemData = inventoryItem.getInventoryItemData();
 
 			// hatchery
@@ -130,7 +162,7 @@ public class Inventories {
 
 			// pokebank
 			if (itemData.getPokemonData().getPokemonId() != PokemonId.MISSINGNO) {
-				pokebank.addPokemon(new Pokemon(api, inventoryItem.getInventoryItemData().getPokemonData()));
+				pokebank.updatePokemon(new Pokemon(api, inventoryItem.getInventoryItemData().getPokemonData()));
 			}
 
 			// items
@@ -139,6 +171,8 @@ public class Inventories {
 				ItemData item = itemData.getItem();
 				if (item.getCount() > 0) {
 					itemBag.addItem(new Item(item, itemBag));
+				} else {
+					itemBag.removeItem(item.getItemId());
 				}
 			}
 
@@ -153,6 +187,7 @@ public class Inventories {
 			// player stats
 			if (itemData.hasPlayerStats()) {
 				api.getPlayerProfile().setStats(new Stats(itemData.getPlayerStats()));
+				pokebank.setPlayerLevel(itemData.getPlayerStats().getLevel());
 			}
 
 			// pokedex
@@ -160,13 +195,123 @@ public class Inventories {
 				pokedex.add(itemData.getPokedexEntry());
 			}
 
+			// the server always sends the complete list of incubators
 			if (itemData.hasEggIncubators()) {
+				incubators.clear();
 				for (EggIncubatorOuterClass.EggIncubator incubator : itemData.getEggIncubators().getEggIncubatorList()) {
 					incubators.add(new EggIncubator(api, incubator));
 				}
 			}
+		}
+
+		// the next delta starts where the server says this one ended, deltas applied out of order never go back
+		long timestamp = response.getInventoryDelta().getNewTimestampMs();
+		lastInventoryUpdate = Math.max(lastInventoryUpdate, timestamp > 0 ? timestamp : api.currentTimeMillis());
+	}
+
+	/**
+	 * Transfers many pokemon at once. The release requests are queued together, so the request handler packs them
+	 * into as few envelopes as its maximum envelope size allows, instead of one round trip per pokemon.
+	 * The pokebank is updated for all of them in one pass, followed by a single inventory delta. A failed
+	 * envelope only fails the pokemon it carried, the others are still applied.
+	 *
+	 * @param pokemons the pokemon to transfer
+	 * @return the result for each pokemon, in the order they were given, FAILED if its request failed
+	 * @throws LoginFailedException  if the inventory delta failed to login
+	 * @throws RemoteServerException if the inventory delta failed
+	 */
+	public Map<Pokemon, ReleasePokemonResponse.Result> transferPokemon(Collection<Pokemon> pokemons)
+			throws LoginFailedException, RemoteServerException {
+		List<Observable<ByteString>> responses = new ArrayList<>(pokemons.size());
+		for (Pokemon pokemon : pokemons) {
+			ReleasePokemonMessage message = ReleasePokemonMessage.newBuilder().setPokemonId(pokemon.getId()).build();
+			AsyncServerRequest request = new AsyncServerRequest(RequestType.RELEASE_POKEMON, message);
+			responses.add(api.getRequestHandler().sendAsyncServerRequests(request));
+		}
+
+		Map<Pokemon, ReleasePokemonResponse.Result> results = new LinkedHashMap<>();
+		List<Pokemon> transferred = new ArrayList<>();
+		int index = 0;
+		for (Pokemon pokemon : pokemons) {
+			ReleasePokemonResponse.Result result = ReleasePokemonResponse.Result.FAILED;
+			ByteString data = receive(responses.get(index++));
+			if (data != null) {
+				try {
+					result = ReleasePokemonResponse.parseFrom(data).getResult();
+				} catch (InvalidProtocolBufferException e) {
+					Log.e(TAG, "Failed to read the release response of pokemon " + pokemon.getId(), e);
+				}
+			}
+			results.put(pokemon, result);
+			if (result == ReleasePokemonResponse.Result.SUCCESS) {
+				transferred.add(pokemon);
+			}
+		}
 
-			lastInventoryUpdate = api.currentTimeMillis();
+		pokebank.removePokemons(transferred);
+		updateInventories();
+		return results;
+	}
+
+	/**
+	 * Evolves many pokemon at once. The evolve requests are queued together, so the request handler packs them
+	 * into as few envelopes as its maximum envelope size allows, instead of one round trip per pokemon.
+	 * The pokebank is updated for all of them in one pass, followed by a single inventory delta. A failed
+	 * envelope only fails the pokemon it carried, the others are still applied.
+	 *
+	 * @param pokemons the pokemon to evolve
+	 * @return the result for each pokemon, in the order they were given, null if its request failed
+	 * @throws LoginFailedException  if the inventory delta failed to login
+	 * @throws RemoteServerException if the inventory delta failed
+	 */
+	public Map<Pokemon, EvolutionResult> evolvePokemon(Collection<Pokemon> pokemons)
+			throws LoginFailedException, RemoteServerException {
+		List<Observable<ByteString>> responses = new ArrayList<>(pokemons.size());
+		for (Pokemon pokemon : pokemons) {
+			EvolvePokemonMessage message = EvolvePokemonMessage.newBuilder().setPokemonId(pokemon.getId()).build();
+			AsyncServerRequest request = new AsyncServerRequest(RequestType.EVOLVE_POKEMON, message);
+			responses.add(api.getRequestHandler().sendAsyncServerRequests(request));
+		}
+
+		Map<Pokemon, EvolutionResult> results = new LinkedHashMap<>();
+		List<Pokemon> evolved = new ArrayList<>();
+		List<Pokemon> evolutions = new ArrayList<>();
+		int index = 0;
+		for (Pokemon pokemon : pokemons) {
+			EvolutionResult result = null;
+			ByteString data = receive(responses.get(index++));
+			if (data != null) {
+				try {
+					result = new EvolutionResult(api, EvolvePokemonResponse.parseFrom(data));
+				} catch (InvalidProtocolBufferException e) {
+					Log.e(TAG, "Failed to read the evolve response of pokemon " + pokemon.getId(), e);
+				}
+			}
+			results.put(pokemon, result);
+			if (result != null && result.isSuccessful()) {
+				evolved.add(pokemon);
+				evolutions.add(result.getEvolvedPokemon());
+			}
+		}
+
+		pokebank.removePokemons(evolved);
+		pokebank.addPokemons(evolutions);
+		updateInventories();
+		return results;
+	}
+
+	/**
+	 * Waits for the response of one request of a bulk operation
+	 *
+	 * @param response the response
+	 * @return the response data, or null if the request failed
+	 */
+	private ByteString receive(Observable<ByteString> response) {
+		try {
+			return AsyncHelper.toBlocking(response);
+		} catch (LoginFailedException | RemoteServerException | AsyncPokemonGoException e) {
+			Log.e(TAG, "Request of a bulk operation failed", e);
+			return null;
 		}
 	}
 }
@@ -15,27 +15,56 @@
 
 package com.pokegoapi.api.inventory;
 
+import POGOProtos.Enums.PokemonFamilyIdOuterClass.PokemonFamilyId;
 import POGOProtos.Enums.PokemonIdOuterClass;
-import com.annimon.stream.Collectors;
-import com.annimon.stream.Stream;
-import com.annimon.stream.function.Predicate;
 import com.pokegoapi.api.pokemon.Pokemon;
-import lombok.Getter;
+import com.pokegoapi.util.LongMap;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
 
-
+/**
+ * The pokemon of the player, indexed by their id, species and family. All methods are synchronized, so inventory
+ * updates never leave the indexes inconsistent for other threads.
+ */
 public class PokeBank {
-	@Getter
-	private final List<Pokemon> pokemons = Collections.synchronizedList(new ArrayList<Pokemon>());
+	private final List<Pokemon> pokemons = new ArrayList<>();
+	private final LongMap<Pokemon> byId = new LongMap<>(256);
+	private final EnumMap<PokemonIdOuterClass.PokemonId, List<Pokemon>> bySpecies
+			= new EnumMap<>(PokemonIdOuterClass.PokemonId.class);
+	private final EnumMap<PokemonFamilyId, List<Pokemon>> byFamily = new EnumMap<>(PokemonFamilyId.class);
+	private final PokemonIndex columns = new PokemonIndex();
+	// unmodifiable copy of pokemons, rebuilt on the first read after a change
+	private List<Pokemon> snapshot;
 
 	public PokeBank() {
 	}
 
-	public void reset() {
+	/**
+	 * Removes all pokemon
+	 */
+	public synchronized void reset() {
 		pokemons.clear();
+		byId.clear();
+		bySpecies.clear();
+		byFamily.clear();
+		columns.clear();
+		snapshot = null;
+	}
+
+	/**
+	 * Gets all pokemon
+	 *
+	 * @return an unmodifiable snapshot of the pokemon, in the order they were added
+	 */
+	public synchronized List<Pokemon> getPokemons() {
+		if (snapshot == null) {
+			snapshot = Collections.unmodifiableList(new ArrayList<>(pokemons));
+		}
+		return snapshot;
 	}
 
 	/**
@@ -43,16 +72,97 @@ public class PokeBank {
 	 *
 	 * @param pokemon Pokemon to add to the inventory
 	 */
-	public void addPokemon(final Pokemon pokemon) {
-		List<Pokemon> alreadyAdded = Stream.of(pokemons).filter(new Predicate<Pokemon>() {
-			@Override
-			public boolean test(Pokemon testPokemon) {
-				return pokemon.getId() == testPokemon.getId();
+	public synchronized void addPokemon(final Pokemon pokemon) {
+		if (byId.containsKey(pokemon.getId())) {
+			return;
+		}
+		byId.put(pokemon.getId(), pokemon);
+		pokemons.add(pokemon);
+		index(bySpecies, pokemon.getPokemonId(), pokemon);
+		PokemonFamilyId family = getFamily(pokemon);
+		if (family != null) {
+			index(byFamily, family, pokemon);
+		}
+		columns.add(pokemon);
+		snapshot = null;
+	}
+
+	/**
+	 * Adds pokemon to the pokebank inventory at once, skipping pokemon that were added already
+	 *
+	 * @param pokemons the pokemon to add
+	 */
+	public synchronized void addPokemons(Collection<Pokemon> pokemons) {
+		for (Pokemon pokemon : pokemons) {
+			addPokemon(pokemon);
+		}
+	}
+
+	/**
+	 * Adds a pokemon, or updates the pokemon with the same id in place so references held by callers stay current.
+	 * A pokemon whose species changed is replaced instead, since its cached metadata belongs to the old species.
+	 *
+	 * @param pokemon the new state of the pokemon
+	 */
+	public synchronized void updatePokemon(Pokemon pokemon) {
+		Pokemon existing = byId.get(pokemon.getId());
+		if (existing == null) {
+			addPokemon(pokemon);
+		} else if (existing.getPokemonId() != pokemon.getPokemonId()) {
+			final int position = pokemons.indexOf(existing);
+			removePokemon(existing);
+			addPokemon(pokemon);
+			// keep the position of the replaced pokemon
+			pokemons.remove(pokemons.size() - 1);
+			pokemons.add(position, pokemon);
+		} else {
+			// setting the proto recomputes the columns through refreshPokemon
+			existing.setProto(pokemon.getProto());
+			existing.setStamina(pokemon.getStamina());
+			snapshot = null;
+		}
+	}
+
+	/**
+	 * Recomputes the query columns of a pokemon whose data changed in place, such as after a power up. Pokemon that
+	 * are not in this pokebank are ignored.
+	 *
+	 * @param pokemon the pokemon
+	 */
+	public synchronized void refreshPokemon(Pokemon pokemon) {
+		if (byId.get(pokemon.getId()) == pokemon) {
+			columns.update(pokemon);
+		}
+	}
+
+	/**
+	 * Finds the pokemon matching a query. Columns are computed once per pokemon and kept sorted, so a query only
+	 * scans the rows within its bounds instead of deriving every value for every pokemon.
+	 *
+	 * @param query the query
+	 * @return the matching pokemon
+	 */
+	public synchronized List<Pokemon> query(PokemonQuery query) {
+		if (query.getSpecies() == null) {
+			return columns.query(query, null);
+		}
+		List<Pokemon> candidates = new ArrayList<>();
+		for (PokemonIdOuterClass.PokemonId id : query.getSpecies()) {
+			List<Pokemon> species = bySpecies.get(id);
+			if (species != null) {
+				candidates.addAll(species);
 			}
-		}).collect(Collectors.<Pokemon>toList());
-		if (alreadyAdded.size() < 1) {
-			pokemons.add(pokemon);
 		}
+		return columns.query(query, candidates);
+	}
+
+	/**
+	 * Sets the player level used for the {@link PokemonQuery.Column#MAX_CP_FOR_PLAYER} column
+	 *
+	 * @param playerLevel the player level
+	 */
+	public synchronized void setPlayerLevel(int playerLevel) {
+		columns.setPlayerLevel(playerLevel);
 	}
 
 	/**
@@ -61,13 +171,20 @@ public class PokeBank {
 	 * @param id the id
 	 * @return the pokemon by pokemon id
 	 */
-	public List<Pokemon> getPokemonByPokemonId(final PokemonIdOuterClass.PokemonId id) {
-		return Stream.of(pokemons).filter(new Predicate<Pokemon>() {
-			@Override
-			public boolean test(Pokemon pokemon) {
-				return pokemon.getPokemonId().equals(id);
-			}
-		}).collect(Collectors.<Pokemon>toList());
+	public synchronized List<Pokemon> getPokemonByPokemonId(final PokemonIdOuterClass.PokemonId id) {
+		List<Pokemon> species = bySpecies.get(id);
+		return species != null ? new ArrayList<>(species) : new ArrayList<Pokemon>();
+	}
+
+	/**
+	 * Gets all pokemon of an evolution family
+	 *
+	 * @param family the family
+	 * @return the pokemon of the family
+	 */
+	public synchronized List<Pokemon> getPokemonByFamily(PokemonFamilyId family) {
+		List<Pokemon> members = byFamily.get(family);
+		return members != null ? new ArrayList<>(members) : new ArrayList<Pokemon>();
 	}
 
 	/**
@@ -75,17 +192,44 @@ public class PokeBank {
 	 *
 	 * @param pokemon the pokemon to remove.
 	 */
-	public void removePokemon(final Pokemon pokemon) {
-		List<Pokemon> previous = new ArrayList<>();
-		previous.addAll(pokemons);
+	public synchronized void removePokemon(final Pokemon pokemon) {
+		Pokemon removed = byId.remove(pokemon.getId());
+		if (removed == null) {
+			return;
+		}
+		pokemons.remove(removed);
+		unindex(bySpecies, removed.getPokemonId(), removed);
+		PokemonFamilyId family = getFamily(removed);
+		if (family != null) {
+			unindex(byFamily, family, removed);
+		}
+		columns.remove(removed);
+		snapshot = null;
+	}
 
-		pokemons.clear();
-		pokemons.addAll(Stream.of(previous).filter(new Predicate<Pokemon>() {
-			@Override
-			public boolean test(Pokemon pokemn) {
-				return pokemn.getId() != pokemon.getId();
-			}
-		}).collect(Collectors.<Pokemon>toList()));
+	/**
+	 * Removes the pokemon with the given id, if there is one
+	 *
+	 * @param id the id of the pokemon
+	 * @return the removed pokemon, or null if there was none
+	 */
+	public synchronized Pokemon removePokemon(long id) {
+		Pokemon pokemon = byId.get(id);
+		if (pokemon != null) {
+			removePokemon(pokemon);
+		}
+		return pokemon;
+	}
+
+	/**
+	 * Removes pokemon from the pokebank inventory at once
+	 *
+	 * @param pokemons the pokemon to remove
+	 */
+	public synchronized void removePokemons(Collection<Pokemon> pokemons) {
+		for (Pokemon pokemon : pokemons) {
+			removePokemon(pokemon);
+		}
 	}
 
 	/**
@@ -94,12 +238,35 @@ public class PokeBank {
 	 * @param id the id
 	 * @return the pokemon
 	 */
-	public Pokemon getPokemonById(final Long id) {
-		for (Pokemon pokemon : pokemons) {
-			if (pokemon.getId() == id) {
-				return pokemon;
+	public synchronized Pokemon getPokemonById(final Long id) {
+		return byId.get(id);
+	}
+
+	public synchronized int size() {
+		return pokemons.size();
+	}
+
+	private static PokemonFamilyId getFamily(Pokemon pokemon) {
+		// pokemon without metadata have no known family
+		return pokemon.getMeta() != null ? pokemon.getPokemonFamily() : null;
+	}
+
+	private static <K extends Enum<K>> void index(EnumMap<K, List<Pokemon>> index, K key, Pokemon pokemon) {
+		List<Pokemon> list = index.get(key);
+		if (list == null) {
+			list = new ArrayList<>();
+			index.put(key, list);
+		}
+		list.add(pokemon);
+	}
+
+	private static <K extends Enum<K>> void unindex(EnumMap<K, List<Pokemon>> index, K key, Pokemon pokemon) {
+		List<Pokemon> list = index.get(key);
+		if (list != null) {
+			list.remove(pokemon);
+			if (list.isEmpty()) {
+				index.remove(key);
 			}
 		}
-		return null;
 	}
 }
@@ -0,0 +1,298 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.api.inventory;
+
+import POGOProtos.Enums.PokemonFamilyIdOuterClass.PokemonFamilyId;
+import POGOProtos.Enums.PokemonIdOuterClass.PokemonId;
+import com.pokegoapi.api.inventory.PokemonQuery.Column;
+import com.pokegoapi.api.pokemon.Pokemon;
+import com.pokegoapi.api.pokemon.PokemonCpUtils;
+import com.pokegoapi.api.pokemon.PokemonMeta;
+import com.pokegoapi.util.LongMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+
+/**
+ * The precomputed columns of the pokemon in a {@link PokeBank}, with one list per column that is kept sorted as
+ * pokemon are added, updated and removed. Not thread safe, the {@link PokeBank} guards it.
+ */
+class PokemonIndex {
+	private static final Column[] COLUMNS = Column.values();
+
+	private final LongMap<Row> rows = new LongMap<>(256);
+	private final EnumMap<Column, List<Row>> sorted = new EnumMap<>(Column.class);
+	private final EnumMap<Column, Comparator<Row>> comparators = new EnumMap<>(Column.class);
+	// max CP is computed for this level until the player stats are known
+	private int playerLevel = 40;
+
+	PokemonIndex() {
+		for (Column column : COLUMNS) {
+			sorted.put(column, new ArrayList<Row>());
+			comparators.put(column, new RowComparator(column));
+		}
+	}
+
+	void add(Pokemon pokemon) {
+		Row row = new Row(pokemon);
+		row.compute(playerLevel);
+		rows.put(pokemon.getId(), row);
+		link(row);
+	}
+
+	/**
+	 * Recomputes the columns of a pokemon whose data changed
+	 *
+	 * @param pokemon the pokemon
+	 */
+	void update(Pokemon pokemon) {
+		Row row = rows.get(pokemon.getId());
+		if (row == null) {
+			add(pokemon);
+			return;
+		}
+		unlink(row);
+		row.pokemon = pokemon;
+		row.compute(playerLevel);
+		link(row);
+	}
+
+	void remove(Pokemon pokemon) {
+		Row row = rows.remove(pokemon.getId());
+		if (row != null) {
+			unlink(row);
+		}
+	}
+
+	void clear() {
+		rows.clear();
+		for (List<Row> list : sorted.values()) {
+			list.clear();
+		}
+	}
+
+	/**
+	 * Sets the player level the max CP column is computed for
+	 *
+	 * @param playerLevel the player level
+	 */
+	void setPlayerLevel(int playerLevel) {
+		if (playerLevel == this.playerLevel || playerLevel <= 0) {
+			return;
+		}
+		this.playerLevel = playerLevel;
+		for (Row row : rows.values()) {
+			row.compute(playerLevel);
+		}
+		// only the max CP column depends on the player level
+		Collections.sort(sorted.get(Column.MAX_CP_FOR_PLAYER), comparators.get(Column.MAX_CP_FOR_PLAYER));
+	}
+
+	/**
+	 * Runs a query
+	 *
+	 * @param query the query
+	 * @param candidates the only pokemon to consider, or null to consider all pokemon
+	 * @return the matching pokemon
+	 */
+	List<Pokemon> query(PokemonQuery query, Collection<Pokemon> candidates) {
+		List<Pokemon> results = new ArrayList<>();
+		if (candidates != null) {
+			List<Row> matches = new ArrayList<>();
+			for (Pokemon pokemon : candidates) {
+				Row row = rows.get(pokemon.getId());
+				if (row != null && matches(row, query)) {
+					matches.add(row);
+				}
+			}
+			if (query.getOrder() != null) {
+				Comparator<Row> comparator = comparators.get(query.getOrder());
+				Collections.sort(matches, query.isDescending() ? Collections.reverseOrder(comparator) : comparator);
+			}
+			for (int index = 0; index < matches.size() && results.size() < query.getLimit(); index++) {
+				results.add(matches.get(index).pokemon);
+			}
+			return results;
+		}
+
+		Column column = query.getOrder() != null ? query.getOrder() : getNarrowestColumn(query);
+		List<Row> list = sorted.get(column);
+		int from = lowerBound(list, column, query.getMin(column));
+		int to = upperBound(list, column, query.getMax(column));
+		if (query.isDescending()) {
+			for (int index = to - 1; index >= from && results.size() < query.getLimit(); index--) {
+				addIfMatches(results, list.get(index), query);
+			}
+		} else {
+			for (int index = from; index < to && results.size() < query.getLimit(); index++) {
+				addIfMatches(results, list.get(index), query);
+			}
+		}
+		return results;
+	}
+
+	private Column getNarrowestColumn(PokemonQuery query) {
+		Column narrowest = Column.CP;
+		int narrowestSize = Integer.MAX_VALUE;
+		for (Column column : COLUMNS) {
+			if (query.getMin(column) == Double.NEGATIVE_INFINITY && query.getMax(column) == Double.POSITIVE_INFINITY) {
+				continue;
+			}
+			List<Row> list = sorted.get(column);
+			int size = upperBound(list, column, query.getMax(column))
+					- lowerBound(list, column, query.getMin(column));
+			if (size < narrowestSize) {
+				narrowest = column;
+				narrowestSize = size;
+			}
+		}
+		return narrowest;
+	}
+
+	private void addIfMatches(List<Pokemon> results, Row row, PokemonQuery query) {
+		if (matches(row, query)) {
+			results.add(row.pokemon);
+		}
+	}
+
+	private boolean matches(Row row, PokemonQuery query) {
+		if (query.getSpecies() != null && !query.getSpecies().contains(row.species)) {
+			return false;
+		}
+		if (query.getFamily() != null && query.getFamily() != row.family) {
+			return false;
+		}
+		if (query.getFavorite() != null && query.getFavorite() != row.favorite) {
+			return false;
+		}
+		for (Column column : COLUMNS) {
+			double value = row.values[column.ordinal()];
+			if (value < query.getMin(column) || value > query.getMax(column)) {
+				return false;
+			}
+		}
+		return query.getFilter() == null || query.getFilter().test(row.pokemon);
+	}
+
+	private void link(Row row) {
+		for (Column column : COLUMNS) {
+			List<Row> list = sorted.get(column);
+			int index = Collections.binarySearch(list, row, comparators.get(column));
+			list.add(index < 0 ? -index - 1 : index, row);
+		}
+	}
+
+	private void unlink(Row row) {
+		for (Column column : COLUMNS) {
+			List<Row> list = sorted.get(column);
+			int index = Collections.binarySearch(list, row, comparators.get(column));
+			if (index >= 0) {
+				list.remove(index);
+			}
+		}
+	}
+
+	/**
+	 * Finds the first row whose value is at least the given value
+	 */
+	private static int lowerBound(List<Row> list, Column column, double value) {
+		int low = 0;
+		int high = list.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (list.get(middle).values[column.ordinal()] < value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Finds the first row whose value is greater than the given value
+	 */
+	private static int upperBound(List<Row> list, Column column, double value) {
+		int low = 0;
+		int high = list.size();
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (list.get(middle).values[column.ordinal()] <= value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private static final class Row {
+		private final long id;
+		private final double[] values = new double[COLUMNS.length];
+		private Pokemon pokemon;
+		private PokemonId species;
+		private PokemonFamilyId family;
+		private boolean favorite;
+
+		private Row(Pokemon pokemon) {
+			this.id = pokemon.getId();
+			this.pokemon = pokemon;
+		}
+
+		private void compute(int playerLevel) {
+			species = pokemon.getPokemonId();
+			favorite = pokemon.isFavorite();
+			values[Column.CP.ordinal()] = pokemon.getCp();
+			values[Column.IV_RATIO.ordinal()] = pokemon.getIvRatio();
+			values[Column.LEVEL.ordinal()] = pokemon.getLevel();
+			PokemonMeta meta = pokemon.getMeta();
+			if (meta != null) {
+				family = meta.getFamily();
+				int attack = pokemon.getIndividualAttack() + meta.getBaseAttack();
+				int defense = pokemon.getIndividualDefense() + meta.getBaseDefense();
+				int stamina = pokemon.getIndividualStamina() + meta.getBaseStamina();
+				values[Column.MAX_CP_FOR_PLAYER.ordinal()]
+						= PokemonCpUtils.getMaxCpForPlayer(attack, defense, stamina, playerLevel);
+				values[Column.CANDY_TO_EVOLVE.ordinal()] = meta.getCandyToEvolve();
+			} else {
+				family = null;
+				values[Column.MAX_CP_FOR_PLAYER.ordinal()] = 0;
+				values[Column.CANDY_TO_EVOLVE.ordinal()] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Orders rows by one column, and by id for equal values so every row has a single position
+	 */
+	private static final class RowComparator implements Comparator<Row> {
+		private final int column;
+
+		private RowComparator(Column column) {
+			this.column = column.ordinal();
+		}
+
+		@Override
+		public int compare(Row first, Row second) {
+			int result = Double.compare(first.values[column], second.values[column]);
+			return result != 0 ? result : Long.compare(first.id, second.id);
+		}
+	}
+}
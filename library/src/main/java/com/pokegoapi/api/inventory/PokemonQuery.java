@@ -0,0 +1,196 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.api.inventory;
+
+import POGOProtos.Enums.PokemonFamilyIdOuterClass.PokemonFamilyId;
+import POGOProtos.Enums.PokemonIdOuterClass.PokemonId;
+import com.annimon.stream.function.Predicate;
+import com.pokegoapi.api.pokemon.Pokemon;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A query over the pokemon in the {@link PokeBank}, for example all pokemon of a species below 80% IV that are not
+ * favorites, by descending CP:
+ * <pre>
+ * new PokemonQuery().species(PokemonId.PIDGEY).below(Column.IV_RATIO, 0.8).favorite(false)
+ *         .orderBy(Column.CP, true)
+ * </pre>
+ * Queries run against columns computed once per pokemon and kept sorted by {@link PokeBank#query(PokemonQuery)}.
+ */
+public class PokemonQuery {
+	/**
+	 * The precomputed values a query can filter and sort on
+	 */
+	public enum Column {
+		CP,
+		IV_RATIO,
+		LEVEL,
+		MAX_CP_FOR_PLAYER,
+		CANDY_TO_EVOLVE
+	}
+
+	@Getter
+	private Set<PokemonId> species;
+	@Getter
+	private PokemonFamilyId family;
+	@Getter
+	private Boolean favorite;
+	@Getter
+	private Predicate<Pokemon> filter;
+	@Getter
+	private Column order;
+	@Getter
+	private boolean descending;
+	@Getter
+	private int limit = Integer.MAX_VALUE;
+	private final double[] min = new double[Column.values().length];
+	private final double[] max = new double[Column.values().length];
+
+	/**
+	 * Creates a query matching all pokemon
+	 */
+	public PokemonQuery() {
+		Arrays.fill(min, Double.NEGATIVE_INFINITY);
+		Arrays.fill(max, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Only matches pokemon of the given species
+	 *
+	 * @param species the species
+	 * @return this query
+	 */
+	public PokemonQuery species(PokemonId... species) {
+		this.species = species.length > 0 ? EnumSet.copyOf(Arrays.asList(species)) : EnumSet.noneOf(PokemonId.class);
+		return this;
+	}
+
+	/**
+	 * Only matches pokemon of the given evolution family
+	 *
+	 * @param family the family
+	 * @return this query
+	 */
+	public PokemonQuery family(PokemonFamilyId family) {
+		this.family = family;
+		return this;
+	}
+
+	/**
+	 * Only matches favorite pokemon, or only pokemon that are not favorites
+	 *
+	 * @param favorite true to match favorites, false to match the other pokemon
+	 * @return this query
+	 */
+	public PokemonQuery favorite(boolean favorite) {
+		this.favorite = favorite;
+		return this;
+	}
+
+	/**
+	 * Only matches pokemon whose value in the given column is at least the given value
+	 *
+	 * @param column the column
+	 * @param value the inclusive minimum
+	 * @return this query
+	 */
+	public PokemonQuery atLeast(Column column, double value) {
+		min[column.ordinal()] = Math.max(min[column.ordinal()], value);
+		return this;
+	}
+
+	/**
+	 * Only matches pokemon whose value in the given column is at most the given value
+	 *
+	 * @param column the column
+	 * @param value the inclusive maximum
+	 * @return this query
+	 */
+	public PokemonQuery atMost(Column column, double value) {
+		max[column.ordinal()] = Math.min(max[column.ordinal()], value);
+		return this;
+	}
+
+	/**
+	 * Only matches pokemon whose value in the given column is below the given value
+	 *
+	 * @param column the column
+	 * @param value the exclusive maximum
+	 * @return this query
+	 */
+	public PokemonQuery below(Column column, double value) {
+		return atMost(column, Math.nextAfter(value, Double.NEGATIVE_INFINITY));
+	}
+
+	/**
+	 * Only matches pokemon accepted by the given filter, which is evaluated after all other conditions
+	 *
+	 * @param filter the filter
+	 * @return this query
+	 */
+	public PokemonQuery filter(Predicate<Pokemon> filter) {
+		this.filter = filter;
+		return this;
+	}
+
+	/**
+	 * Sorts the results by the given column, results are in no particular order otherwise
+	 *
+	 * @param column the column to sort by
+	 * @param descending true to return the highest values first
+	 * @return this query
+	 */
+	public PokemonQuery orderBy(Column column, boolean descending) {
+		this.order = column;
+		this.descending = descending;
+		return this;
+	}
+
+	/**
+	 * Returns at most the given number of results
+	 *
+	 * @param limit the maximum number of results
+	 * @return this query
+	 */
+	public PokemonQuery limit(int limit) {
+		this.limit = limit;
+		return this;
+	}
+
+	/**
+	 * Gets the inclusive minimum of a column
+	 *
+	 * @param column the column
+	 * @return the minimum, negative infinity if there is none
+	 */
+	public double getMin(Column column) {
+		return min[column.ordinal()];
+	}
+
+	/**
+	 * Gets the inclusive maximum of a column
+	 *
+	 * @param column the column
+	 * @return the maximum, positive infinity if there is none
+	 */
+	public double getMax(Column column) {
+		return max[column.ordinal()];
+	}
+}
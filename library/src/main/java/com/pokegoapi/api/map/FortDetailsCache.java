@@ -0,0 +1,352 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.api.map;
+
+import POGOProtos.Map.Fort.FortDataOuterClass.FortData;
+import POGOProtos.Networking.Requests.Messages.FortDetailsMessageOuterClass.FortDetailsMessage;
+import POGOProtos.Networking.Requests.Messages.GetGymDetailsMessageOuterClass.GetGymDetailsMessage;
+import POGOProtos.Networking.Requests.RequestTypeOuterClass.RequestType;
+import POGOProtos.Networking.Responses.FortDetailsResponseOuterClass.FortDetailsResponse;
+import POGOProtos.Networking.Responses.GetGymDetailsResponseOuterClass.GetGymDetailsResponse;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.pokegoapi.api.PokemonGo;
+import com.pokegoapi.exceptions.AsyncRemoteServerException;
+import com.pokegoapi.main.AsyncServerRequest;
+import com.pokegoapi.util.Log;
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Caches FORT_DETAILS and GET_GYM_DETAILS responses for all forts of a session. How old a cached response may be
+ * depends on what it is used for: names, descriptions and images hardly ever change, while lures and gym defenders
+ * change within seconds. Requests for the same fort that are in flight are shared.
+ */
+public class FortDetailsCache {
+	private static final String TAG = FortDetailsCache.class.getSimpleName();
+	public static final int DEFAULT_MAX_ENTRIES = 2048;
+
+	/**
+	 * What the details of a fort are needed for, each field has its own time to live
+	 */
+	public enum Field {
+		/**
+		 * Name, description and image urls, 6 hours by default
+		 */
+		STATIC(6 * 60 * 60 * 1000),
+		/**
+		 * Modifiers like lures, 30 seconds by default
+		 */
+		LURE(30 * 1000),
+		/**
+		 * Gym state, members and defending pokemon, 10 seconds by default
+		 */
+		DEFENDERS(10 * 1000);
+
+		private final long defaultTtl;
+
+		Field(long defaultTtl) {
+			this.defaultTtl = defaultTtl;
+		}
+	}
+
+	private final PokemonGo api;
+	private final EnumMap<Field, Long> ttls = new EnumMap<>(Field.class);
+	private final LinkedHashMap<String, Entry<FortDetailsResponse>> fortDetails
+			= new LinkedHashMap<>(64, 0.75f, true);
+	private final LinkedHashMap<String, Entry<GetGymDetailsResponse>> gymDetails
+			= new LinkedHashMap<>(64, 0.75f, true);
+	private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+	/**
+	 * Creates a cache for the given session
+	 *
+	 * @param api the api
+	 */
+	public FortDetailsCache(PokemonGo api) {
+		this.api = api;
+		for (Field field : Field.values()) {
+			ttls.put(field, field.defaultTtl);
+		}
+	}
+
+	/**
+	 * Gets the FORT_DETAILS of a fort, requesting them if the cached details are too old for the given field
+	 *
+	 * @param fortId the fort id
+	 * @param latitude the fort latitude
+	 * @param longitude the fort longitude
+	 * @param field what the details are needed for
+	 * @return the details
+	 */
+	public Observable<FortDetailsResponse> getFortDetailsAsync(final String fortId, final double latitude,
+			final double longitude, Field field) {
+		WorldStore store = api.getMap().getWorldStore();
+		if (field == Field.STATIC && store != null) {
+			// the static fields of stored details are still good after a restart, as long as they are not too old
+			FortDetailsResponse stored = store.getFortDetails(fortId);
+			if (stored != null && api.currentTimeMillis() - store.getFortDetailsTime(fortId) < getTtl(Field.STATIC)) {
+				return Observable.just(stored);
+			}
+		}
+		return get(fortDetails, fortId, field, new Func0<Observable<FortDetailsResponse>>() {
+			@Override
+			public Observable<FortDetailsResponse> call() {
+				return requestFortDetails(fortId, latitude, longitude);
+			}
+		});
+	}
+
+	/**
+	 * Gets the GET_GYM_DETAILS of a gym, requesting them from the current location if the cached details are too
+	 * old for the given field
+	 *
+	 * @param gymId the gym id
+	 * @param latitude the gym latitude
+	 * @param longitude the gym longitude
+	 * @param field what the details are needed for
+	 * @return the details
+	 */
+	public Observable<GetGymDetailsResponse> getGymDetailsAsync(final String gymId, final double latitude,
+			final double longitude, Field field) {
+		return get(gymDetails, gymId, field, new Func0<Observable<GetGymDetailsResponse>>() {
+			@Override
+			public Observable<GetGymDetailsResponse> call() {
+				return requestGymDetails(gymId, latitude, longitude);
+			}
+		});
+	}
+
+	/**
+	 * Requests the FORT_DETAILS of all given forts that are not cached recently enough for the given field at once,
+	 * so the request handler sends them together in as few envelopes as possible
+	 *
+	 * @param forts the forts
+	 * @param field what the details are needed for
+	 * @return the details of all given forts in order, once all of them were received
+	 */
+	public Observable<List<FortDetailsResponse>> prefetchFortDetails(Collection<FortData> forts, Field field) {
+		List<Observable<FortDetailsResponse>> requests = new ArrayList<>(forts.size());
+		for (FortData fort : forts) {
+			requests.add(getFortDetailsAsync(fort.getId(), fort.getLatitude(), fort.getLongitude(), field));
+		}
+		return Observable.concat(Observable.from(requests)).toList();
+	}
+
+	/**
+	 * Requests the GET_GYM_DETAILS of all given gyms that are not cached recently enough for the given field at
+	 * once, so the request handler sends them together in as few envelopes as possible
+	 *
+	 * @param gyms the gyms
+	 * @param field what the details are needed for
+	 * @return the details of all given gyms in order, once all of them were received
+	 */
+	public Observable<List<GetGymDetailsResponse>> prefetchGymDetails(Collection<FortData> gyms, Field field) {
+		List<Observable<GetGymDetailsResponse>> requests = new ArrayList<>(gyms.size());
+		for (FortData gym : gyms) {
+			requests.add(getGymDetailsAsync(gym.getId(), gym.getLatitude(), gym.getLongitude(), field));
+		}
+		return Observable.concat(Observable.from(requests)).toList();
+	}
+
+	private <T> Observable<T> get(final LinkedHashMap<String, Entry<T>> entries, final String id, Field field,
+			Func0<Observable<T>> request) {
+		long now = api.currentTimeMillis();
+		synchronized (this) {
+			Entry<T> entry = entries.get(id);
+			if (entry != null && entry.value != null && now - entry.time < ttls.get(field)) {
+				return Observable.just(entry.value);
+			}
+			if (entry != null && entry.pending != null) {
+				return entry.pending;
+			}
+			final Entry<T> pendingEntry = entry != null ? entry : new Entry<T>(null, 0);
+			Observable<T> pending = request.call().doOnNext(new Action1<T>() {
+				@Override
+				public void call(T value) {
+					synchronized (FortDetailsCache.this) {
+						pendingEntry.value = value;
+						pendingEntry.time = api.currentTimeMillis();
+					}
+				}
+			}).doOnTerminate(new Action0() {
+				@Override
+				public void call() {
+					synchronized (FortDetailsCache.this) {
+						pendingEntry.pending = null;
+						if (pendingEntry.value == null) {
+							entries.remove(id);
+						}
+					}
+				}
+			}).cache();
+			pendingEntry.pending = pending;
+			entries.put(id, pendingEntry);
+			trim(entries);
+			// the response is cached even if no caller subscribes
+			pending.subscribe(new Subscriber<T>() {
+				@Override
+				public void onCompleted() {
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+				}
+
+				@Override
+				public void onNext(T value) {
+				}
+			});
+			return pending;
+		}
+	}
+
+	private Observable<FortDetailsResponse> requestFortDetails(String fortId, double latitude, double longitude) {
+		FortDetailsMessage reqMsg = FortDetailsMessage.newBuilder()
+				.setFortId(fortId)
+				.setLatitude(latitude)
+				.setLongitude(longitude)
+				.build();
+
+		AsyncServerRequest serverRequest = new AsyncServerRequest(RequestType.FORT_DETAILS, reqMsg);
+		return api.getRequestHandler()
+				.sendAsyncServerRequests(serverRequest).map(new Func1<ByteString, FortDetailsResponse>() {
+					@Override
+					public FortDetailsResponse call(ByteString byteString) {
+						FortDetailsResponse response;
+						try {
+							response = FortDetailsResponse.parseFrom(byteString);
+						} catch (InvalidProtocolBufferException e) {
+							throw new AsyncRemoteServerException(e);
+						}
+						WorldStore store = api.getMap().getWorldStore();
+						if (store != null) {
+							try {
+								store.putFortDetails(response, api.currentTimeMillis());
+							} catch (IOException e) {
+								Log.e(TAG, "Failed to store fort details", e);
+							}
+						}
+						return response;
+					}
+				});
+	}
+
+	private Observable<GetGymDetailsResponse> requestGymDetails(String gymId, double latitude, double longitude) {
+		GetGymDetailsMessage reqMsg = GetGymDetailsMessage.newBuilder()
+				.setGymId(gymId)
+				.setGymLatitude(latitude)
+				.setGymLongitude(longitude)
+				.setPlayerLatitude(api.getLatitude())
+				.setPlayerLongitude(api.getLongitude())
+				.build();
+
+		AsyncServerRequest serverRequest = new AsyncServerRequest(RequestType.GET_GYM_DETAILS, reqMsg);
+		return api.getRequestHandler()
+				.sendAsyncServerRequests(serverRequest).map(new Func1<ByteString, GetGymDetailsResponse>() {
+					@Override
+					public GetGymDetailsResponse call(ByteString byteString) {
+						try {
+							return GetGymDetailsResponse.parseFrom(byteString);
+						} catch (InvalidProtocolBufferException e) {
+							throw new AsyncRemoteServerException(e);
+						}
+					}
+				});
+	}
+
+	public synchronized long getTtl(Field field) {
+		return ttls.get(field);
+	}
+
+	/**
+	 * Sets how old cached details may be when they are needed for the given field
+	 *
+	 * @param field the field
+	 * @param ttl the time to live in milliseconds
+	 */
+	public synchronized void setTtl(Field field, long ttl) {
+		if (ttl < 0) {
+			throw new IllegalArgumentException("Time to live cannot be negative");
+		}
+		ttls.put(field, ttl);
+	}
+
+	public synchronized int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Sets how many forts and how many gyms are cached, the least recently used ones are dropped first
+	 *
+	 * @param maxEntries the maximum amount of entries
+	 */
+	public synchronized void setMaxEntries(int maxEntries) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("Must cache at least one entry");
+		}
+		this.maxEntries = maxEntries;
+		trim(fortDetails);
+		trim(gymDetails);
+	}
+
+	/**
+	 * Drops the cached details of a fort, for example after deploying a pokemon to it
+	 *
+	 * @param fortId the fort id
+	 */
+	public synchronized void invalidate(String fortId) {
+		fortDetails.remove(fortId);
+		gymDetails.remove(fortId);
+	}
+
+	/**
+	 * Drops all cached details
+	 */
+	public synchronized void clear() {
+		fortDetails.clear();
+		gymDetails.clear();
+	}
+
+	private void trim(LinkedHashMap<String, ? extends Entry<?>> entries) {
+		while (entries.size() > maxEntries) {
+			String eldest = entries.keySet().iterator().next();
+			entries.remove(eldest);
+		}
+	}
+
+	private static class Entry<T> {
+		private T value;
+		private long time;
+		private Observable<T> pending;
+
+		Entry(T value, long time) {
+			this.value = value;
+			this.time = time;
+		}
+	}
+}
@@ -17,7 +17,6 @@ package com.pokegoapi.api.map;
 
 import POGOProtos.Inventory.Item.ItemIdOuterClass.ItemId;
 import POGOProtos.Map.Fort.FortDataOuterClass.FortData;
-import POGOProtos.Map.Fort.FortTypeOuterClass.FortType;
 import POGOProtos.Map.MapCellOuterClass.MapCell;
 import POGOProtos.Map.Pokemon.MapPokemonOuterClass.MapPokemon;
 import POGOProtos.Map.Pokemon.NearbyPokemonOuterClass;
@@ -25,19 +24,15 @@ import POGOProtos.Map.Pokemon.WildPokemonOuterClass;
 import POGOProtos.Map.SpawnPointOuterClass;
 import POGOProtos.Networking.Requests.Messages.CatchPokemonMessageOuterClass.CatchPokemonMessage;
 import POGOProtos.Networking.Requests.Messages.EncounterMessageOuterClass;
-import POGOProtos.Networking.Requests.Messages.FortDetailsMessageOuterClass.FortDetailsMessage;
 import POGOProtos.Networking.Requests.Messages.FortSearchMessageOuterClass.FortSearchMessage;
 import POGOProtos.Networking.Requests.Messages.GetMapObjectsMessageOuterClass;
 import POGOProtos.Networking.Requests.Messages.GetMapObjectsMessageOuterClass.GetMapObjectsMessage;
 import POGOProtos.Networking.Requests.RequestTypeOuterClass.RequestType;
 import POGOProtos.Networking.Responses.CatchPokemonResponseOuterClass.CatchPokemonResponse;
 import POGOProtos.Networking.Responses.EncounterResponseOuterClass.EncounterResponse;
-import POGOProtos.Networking.Responses.FortDetailsResponseOuterClass;
+import POGOProtos.Networking.Responses.FortDetailsResponseOuterClass.FortDetailsResponse;
 import POGOProtos.Networking.Responses.FortSearchResponseOuterClass.FortSearchResponse;
 import POGOProtos.Networking.Responses.GetMapObjectsResponseOuterClass.GetMapObjectsResponse;
-import com.annimon.stream.Collectors;
-import com.annimon.stream.Stream;
-import com.annimon.stream.function.Function;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.pokegoapi.api.PokemonGo;
@@ -49,29 +44,43 @@ import com.pokegoapi.api.map.pokemon.NearbyPokemon;
 import com.pokegoapi.exceptions.AsyncRemoteServerException;
 import com.pokegoapi.exceptions.LoginFailedException;
 import com.pokegoapi.exceptions.RemoteServerException;
-import com.pokegoapi.google.common.geometry.MutableInteger;
-import com.pokegoapi.google.common.geometry.S2CellId;
-import com.pokegoapi.google.common.geometry.S2LatLng;
 import com.pokegoapi.main.AsyncServerRequest;
 import com.pokegoapi.main.ServerRequest;
 import com.pokegoapi.util.AsyncHelper;
+import com.pokegoapi.util.CellNeighborhood;
+import com.pokegoapi.util.Log;
 import com.pokegoapi.util.MapUtil;
+import com.pokegoapi.util.SpatialIndex;
+import lombok.Getter;
 import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Action0;
 import rx.functions.Func1;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 public class Map {
+	private static final String TAG = Map.class.getSimpleName();
+
 	private final PokemonGo api;
-	private MapObjects cachedMapObjects;
-	private final List<CatchablePokemon> cachedCatchable = Collections.synchronizedList(
-			new CopyOnWriteArrayList<CatchablePokemon>()
-	);
+	// the last built snapshot with the cells it was built from, replaced as a whole so readers need no lock
+	private volatile CachedMapObjects cachedMapObjects;
+	@Getter
+	private final MapCellCache cellCache = new MapCellCache();
+	@Getter
+	private final SpawnTimeline spawnTimeline = new SpawnTimeline();
+	@Getter
+	private volatile WorldStore worldStore;
+	@Getter
+	private final FortDetailsCache fortDetailsCache;
+	private volatile List<CatchablePokemon> cachedCatchable = Collections.emptyList();
+	private final HashMap<Set<Long>, Observable<MapObjects>> pendingRequests = new HashMap<>();
 	private int cellWidth = 3;
 	private long lastMapUpdate;
 
@@ -82,7 +91,8 @@ public class Map {
 	 */
 	public Map(PokemonGo api) {
 		this.api = api;
-		cachedMapObjects = new MapObjects(api);
+		fortDetailsCache = new FortDetailsCache(api);
+		cachedMapObjects = new CachedMapObjects(Collections.<Long>emptyList(), new MapObjects(api));
 		lastMapUpdate = 0;
 	}
 
@@ -93,8 +103,9 @@ public class Map {
 	 */
 	public Observable<List<CatchablePokemon>> getCatchablePokemonAsync() {
 
-		if (useCache() && cachedCatchable.size() > 0) {
-			return Observable.just(cachedCatchable);
+		List<CatchablePokemon> cached = cachedCatchable;
+		if (useCache() && cached.size() > 0) {
+			return Observable.just(cached);
 		}
 
 
@@ -116,9 +127,10 @@ public class Map {
 						catchablePokemons.add(new CatchablePokemon(api, pokestop.getFortData()));
 					}
 				}
-				cachedCatchable.clear();
-				cachedCatchable.addAll(catchablePokemons);
-				return cachedCatchable;
+				List<CatchablePokemon> result = Collections.unmodifiableList(
+						new ArrayList<>(catchablePokemons));
+				cachedCatchable = result;
+				return result;
 			}
 		});
 	}
@@ -128,9 +140,11 @@ public class Map {
 	 *
 	 * @param pokemon the catchable pokemon
 	 */
-	public void removeCatchable(CatchablePokemon pokemon) {
-		if (cachedCatchable.size() > 0) {
-			cachedCatchable.remove(pokemon);
+	public synchronized void removeCatchable(CatchablePokemon pokemon) {
+		if (cachedCatchable.contains(pokemon)) {
+			List<CatchablePokemon> remaining = new ArrayList<>(cachedCatchable);
+			remaining.remove(pokemon);
+			cachedCatchable = Collections.unmodifiableList(remaining);
 		}
 	}
 
@@ -158,6 +172,18 @@ public class Map {
 		return util.sortItems(getCatchablePokemon(), api);
 	}
 
+	/**
+	 * Indexes the catchable pokemon around the current location, to find them by distance without measuring the
+	 * distance to each of them for every query.
+	 *
+	 * @return a spatial index of the catchable pokemon
+	 * @throws LoginFailedException  the login failed exception
+	 * @throws RemoteServerException the remote server exception
+	 */
+	public SpatialIndex<CatchablePokemon> getCatchablePokemonIndex() throws LoginFailedException, RemoteServerException {
+		return new SpatialIndex<>(getCatchablePokemon());
+	}
+
 	/**
 	 * Returns a list of nearby pokemon (non-catchable).
 	 *
@@ -262,6 +288,17 @@ public class Map {
 		return util.sortItems(getGyms(), api);
 	}
 
+	/**
+	 * Indexes the gyms around the current location.
+	 *
+	 * @return a spatial index of the gyms
+	 * @throws LoginFailedException  the login failed exception
+	 * @throws RemoteServerException the remote server exception
+	 */
+	public SpatialIndex<Gym> getGymIndex() throws LoginFailedException, RemoteServerException {
+		return new SpatialIndex<>(getGyms());
+	}
+
 	/**
 	 * Returns a list of decimated spawn points at current location.
 	 *
@@ -304,6 +341,17 @@ public class Map {
 		return util.sortItems(getDecimatedSpawnPoints(), api);
 	}
 
+	/**
+	 * Indexes the spawn points around the current location.
+	 *
+	 * @return a spatial index of the spawn points
+	 * @throws LoginFailedException  the login failed exception
+	 * @throws RemoteServerException the remote server exception
+	 */
+	public SpatialIndex<Point> getSpawnPointIndex() throws LoginFailedException, RemoteServerException {
+		return new SpatialIndex<>(getSpawnPoints());
+	}
+
 	/**
 	 * Returns MapObjects around your current location.
 	 *
@@ -330,25 +378,57 @@ public class Map {
 	 * @return MapObjects in the given cells
 	 */
 	public Observable<MapObjects> getMapObjectsAsync(List<Long> cellIds) {
+		final List<Long> requestedCells = new ArrayList<>(cellIds);
+
+		if (api.hasChallenge() || cellCache.isFresh(requestedCells, api.currentTimeMillis(),
+				(long) api.getSettings().getMapSettings().getMinRefresh())) {
+			return Observable.just(getCachedMapObjects(requestedCells));
+		}
+
+		// callers asking for the same cells while a request is in flight share its result
+		final Set<Long> key = new HashSet<>(requestedCells);
+		synchronized (pendingRequests) {
+			Observable<MapObjects> pending = pendingRequests.get(key);
+			if (pending != null) {
+				return pending;
+			}
+			Observable<MapObjects> request = requestMapObjects(requestedCells).doOnTerminate(new Action0() {
+				@Override
+				public void call() {
+					synchronized (pendingRequests) {
+						pendingRequests.remove(key);
+					}
+				}
+			}).cache();
+			pendingRequests.put(key, request);
+			// the response is merged into the cache even if no caller subscribes
+			request.subscribe(new Subscriber<MapObjects>() {
+				@Override
+				public void onCompleted() {
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+				}
 
-		if ((useCache() && (cachedMapObjects.getNearbyPokemons().size() > 0
-							|| cachedMapObjects.getCatchablePokemons().size() > 0
-							|| cachedMapObjects.getWildPokemons().size() > 0
-							|| cachedMapObjects.getDecimatedSpawnPoints().size() > 0
-							|| cachedMapObjects.getSpawnPoints().size() > 0)) || api.hasChallenge()) {
-			return Observable.just(cachedMapObjects);
+				@Override
+				public void onNext(MapObjects mapObjects) {
+				}
+			});
+			return request;
 		}
+	}
 
+	private Observable<MapObjects> requestMapObjects(final List<Long> requestedCells) {
 		lastMapUpdate = api.currentTimeMillis();
 		GetMapObjectsMessage.Builder builder = GetMapObjectsMessageOuterClass.GetMapObjectsMessage.newBuilder()
 				.setLatitude(api.getLatitude())
 				.setLongitude(api.getLongitude());
 
-		int index = 0;
-		for (Long cellId : cellIds) {
+		// cells that were seen before only return what changed since then
+		for (Long cellId : requestedCells) {
 			builder.addCellId(cellId);
-			builder.addSinceTimestampMs(0);
-			index++;
+			builder.addSinceTimestampMs(cellCache.getSinceTimestamp(cellId));
 		}
 
 		final AsyncServerRequest asyncServerRequest = new AsyncServerRequest(
@@ -364,32 +444,79 @@ public class Map {
 							throw new AsyncRemoteServerException(e);
 						}
 
-						MapObjects result = new MapObjects(api);
-						cachedMapObjects = result;
+						cellCache.merge(response.getMapCellsList(), api.currentTimeMillis());
+						spawnTimeline.record(response.getMapCellsList(), api.currentTimeMillis());
+						store(response.getMapCellsList());
+
+						// only cells the server returned data for are part of the result
+						List<Long> returnedCells = new ArrayList<>();
 						for (MapCell mapCell : response.getMapCellsList()) {
-							result.addNearbyPokemons(mapCell.getNearbyPokemonsList());
-							result.addCatchablePokemons(mapCell.getCatchablePokemonsList());
-							result.addWildPokemons(mapCell.getWildPokemonsList());
-							result.addDecimatedSpawnPoints(mapCell.getDecimatedSpawnPointsList());
-							result.addSpawnPoints(mapCell.getSpawnPointsList());
-
-							java.util.Map<FortType, List<FortData>> groupedForts = Stream.of(mapCell.getFortsList())
-									.collect(Collectors.groupingBy(new Function<FortData, FortType>() {
-										@Override
-										public FortType apply(FortData fortData) {
-											return fortData.getType();
-										}
-									}));
-							result.addGyms(groupedForts.get(FortType.GYM));
-							result.addPokestops(groupedForts.get(FortType.CHECKPOINT));
+							if (mapCell.getCurrentTimestampMs() != 0) {
+								returnedCells.add(mapCell.getS2CellId());
+							}
 						}
-
-						cachedCatchable.clear();
+						MapObjects result = new MapObjects(api, cellCache.getCells(returnedCells), response);
+						cachedMapObjects = new CachedMapObjects(requestedCells, result);
+						cachedCatchable = Collections.emptyList();
 						return result;
 					}
 				});
 	}
 
+	/**
+	 * Sets the store that forts, fort details and spawn points are kept in across restarts. The forts that are
+	 * stored already are added to the map cell cache, so {@link #getCachedMapObjects(List)} knows them right away,
+	 * and the stored spawn points are added to the spawn timeline.
+	 *
+	 * @param worldStore the store, or null to stop storing
+	 */
+	public void setWorldStore(WorldStore worldStore) {
+		if (worldStore != null) {
+			for (Long cellId : worldStore.getCellIds()) {
+				cellCache.seed(cellId, worldStore.getForts(cellId));
+			}
+			// drop the last snapshot, it was taken without the seeded forts
+			cachedMapObjects = new CachedMapObjects(Collections.<Long>emptyList(), new MapObjects(api));
+			spawnTimeline.restore(worldStore.getSpawnPoints());
+		}
+		this.worldStore = worldStore;
+	}
+
+	private void store(List<MapCell> mapCells) {
+		WorldStore store = worldStore;
+		if (store == null) {
+			return;
+		}
+		try {
+			for (MapCell mapCell : mapCells) {
+				if (mapCell.getCurrentTimestampMs() == 0) {
+					continue;
+				}
+				store.putForts(mapCell.getS2CellId(), mapCell.getFortsList());
+				store.removeForts(mapCell.getDeletedObjectsList());
+				store.putSpawnPoints(spawnTimeline.getSpawnPoints(mapCell.getS2CellId()));
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "Failed to store map cells", e);
+		}
+	}
+
+	/**
+	 * Returns the map objects of the given cells from the cache, without requesting them. This includes the forts
+	 * restored from the world store before the cells were requested in this session.
+	 *
+	 * @param cellIds the cell ids
+	 * @return MapObjects in the given cells, as far as they are cached
+	 */
+	public MapObjects getCachedMapObjects(List<Long> cellIds) {
+		CachedMapObjects cached = cachedMapObjects;
+		if (!cellIds.equals(cached.cellIds)) {
+			cached = new CachedMapObjects(cellIds, new MapObjects(api, cellCache.getCells(cellIds), null));
+			cachedMapObjects = cached;
+		}
+		return cached.mapObjects;
+	}
+
 	/**
 	 * Returns MapObjects around your current location.
 	 *
@@ -501,26 +628,7 @@ public class Map {
 	 * @return List of Cells
 	 */
 	public List<Long> getCellIds(double latitude, double longitude, int width) {
-		S2LatLng latLng = S2LatLng.fromDegrees(latitude, longitude);
-		S2CellId cellId = S2CellId.fromLatLng(latLng).parent(15);
-
-		MutableInteger index = new MutableInteger(0);
-		MutableInteger jindex = new MutableInteger(0);
-
-
-		int level = cellId.level();
-		int size = 1 << (S2CellId.MAX_LEVEL - level);
-		int face = cellId.toFaceIJOrientation(index, jindex, null);
-
-		List<Long> cells = new ArrayList<>();
-
-		int halfWidth = (int) Math.floor(width / 2);
-		for (int x = -halfWidth; x <= halfWidth; x++) {
-			for (int y = -halfWidth; y <= halfWidth; y++) {
-				cells.add(S2CellId.fromFaceIJ(face, index.intValue() + x * size, jindex.intValue() + y * size).parent(15).id());
-			}
-		}
-		return cells;
+		return CellNeighborhood.getCellIdList(latitude, longitude, width);
 	}
 
 	/**
@@ -532,24 +640,10 @@ public class Map {
 	 * @return the fort details
 	 */
 	public Observable<FortDetails> getFortDetailsAsync(String id, double lon, double lat) {
-		FortDetailsMessage reqMsg = FortDetailsMessage.newBuilder()
-				.setFortId(id)
-				.setLatitude(lat)
-				.setLongitude(lon)
-				.build();
-
-		AsyncServerRequest serverRequest = new AsyncServerRequest(RequestType.FORT_DETAILS,
-				reqMsg);
-		return api.getRequestHandler()
-				.sendAsyncServerRequests(serverRequest).map(new Func1<ByteString, FortDetails>() {
+		return fortDetailsCache.getFortDetailsAsync(id, lat, lon, FortDetailsCache.Field.LURE)
+				.map(new Func1<FortDetailsResponse, FortDetails>() {
 					@Override
-					public FortDetails call(ByteString byteString) {
-						FortDetailsResponseOuterClass.FortDetailsResponse response;
-						try {
-							response = FortDetailsResponseOuterClass.FortDetailsResponse.parseFrom(byteString);
-						} catch (InvalidProtocolBufferException e) {
-							throw new AsyncRemoteServerException(e);
-						}
+					public FortDetails call(FortDetailsResponse response) {
 						return new FortDetails(response);
 					}
 				});
@@ -686,19 +780,26 @@ public class Map {
 	}
 
 	/**
-	 * Clear map objects cache
+	 * Clear map objects cache, cached cells are kept to only request what changed in them
 	 *
 	 */
 	public void clearCache() {
-		cachedCatchable.clear();
-		cachedMapObjects.getNearbyPokemons().clear();
-		cachedMapObjects.getCatchablePokemons().clear();
-		cachedMapObjects.getWildPokemons().clear();
-		cachedMapObjects.getDecimatedSpawnPoints().clear();
-		cachedMapObjects.getSpawnPoints().clear();
+		cellCache.expire();
+		cachedCatchable = Collections.emptyList();
+		cachedMapObjects = new CachedMapObjects(Collections.<Long>emptyList(), new MapObjects(api));
 	}
 
 	private List<Long> getDefaultCells() {
 		return getCellIds(api.getLatitude(), api.getLongitude(), cellWidth);
 	}
+
+	private static class CachedMapObjects {
+		private final List<Long> cellIds;
+		private final MapObjects mapObjects;
+
+		CachedMapObjects(List<Long> cellIds, MapObjects mapObjects) {
+			this.cellIds = cellIds;
+			this.mapObjects = mapObjects;
+		}
+	}
 }
@@ -0,0 +1,204 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.api.map;
+
+import POGOProtos.Map.Fort.FortDataOuterClass.FortData;
+import POGOProtos.Map.MapCellOuterClass.MapCell;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Caches the map cells returned by GET_MAP_OBJECTS by their (level 15) cell id, so they can be requested again with
+ * their real since timestamp and the returned deltas merged in.
+ */
+public class MapCellCache {
+	public static final int DEFAULT_MAX_CELLS = 1024;
+
+	private final LinkedHashMap<Long, CachedCell> cells = new LinkedHashMap<>(64, 0.75f, true);
+	private int maxCells = DEFAULT_MAX_CELLS;
+
+	/**
+	 * Gets the since timestamp to request the given cell with
+	 *
+	 * @param cellId the cell id
+	 * @return the server timestamp of the cached cell, 0 if it is not cached
+	 */
+	public synchronized long getSinceTimestamp(long cellId) {
+		CachedCell cached = cells.get(cellId);
+		return cached != null ? cached.cell.getCurrentTimestampMs() : 0;
+	}
+
+	/**
+	 * Checks whether all given cells were refreshed recently enough
+	 *
+	 * @param cellIds the cell ids
+	 * @param now the current time
+	 * @param maxAge how long ago cells may have been refreshed
+	 * @return true if every cell is cached and was refreshed within maxAge
+	 */
+	public synchronized boolean isFresh(Collection<Long> cellIds, long now, long maxAge) {
+		if (cellIds.isEmpty()) {
+			return false;
+		}
+		for (Long cellId : cellIds) {
+			CachedCell cached = cells.get(cellId);
+			if (cached == null || cached.lastUpdate == 0 || now - cached.lastUpdate >= maxAge) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the cached cells for the given cell ids, skipping cells that are not cached
+	 *
+	 * @param cellIds the cell ids
+	 * @return the cached cells
+	 */
+	public synchronized List<MapCell> getCells(Collection<Long> cellIds) {
+		List<MapCell> result = new ArrayList<>(cellIds.size());
+		for (Long cellId : cellIds) {
+			CachedCell cached = cells.get(cellId);
+			if (cached != null) {
+				result.add(cached.cell);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the forts of a cell that are known from an earlier session, for example from a {@link WorldStore}.
+	 * The cell is not fresh and has no since timestamp, so it is still requested in full, and the first response
+	 * for it replaces the seeded forts instead of being merged into them.
+	 *
+	 * @param cellId the cell id
+	 * @param forts the forts
+	 */
+	public synchronized void seed(long cellId, Collection<FortData> forts) {
+		if (cells.containsKey(cellId) || forts.isEmpty()) {
+			return;
+		}
+		MapCell cell = MapCell.newBuilder().setS2CellId(cellId).addAllForts(forts).build();
+		CachedCell cached = new CachedCell(cell, 0);
+		cached.seeded = true;
+		cells.put(cellId, cached);
+		trim();
+	}
+
+	/**
+	 * Merges the cells of a response into the cache. Forts are merged by id and removed when listed as deleted,
+	 * pokemon are replaced, and spawn points are only replaced when the response holds any.
+	 * Cells without a timestamp hold no data (for example when they are too far away) and are ignored.
+	 *
+	 * @param responseCells the cells of the response
+	 * @param now the current time
+	 */
+	public synchronized void merge(List<MapCell> responseCells, long now) {
+		for (MapCell delta : responseCells) {
+			if (delta.getCurrentTimestampMs() == 0) {
+				continue;
+			}
+			CachedCell cached = cells.get(delta.getS2CellId());
+			// seeded cells may miss deletions from while they were not requested, so the full response replaces them
+			MapCell merged = cached == null || cached.seeded ? delta : merge(cached.cell, delta);
+			cells.put(delta.getS2CellId(), new CachedCell(merged, now));
+		}
+		trim();
+	}
+
+	private MapCell merge(MapCell cell, MapCell delta) {
+		LinkedHashMap<String, FortData> forts = new LinkedHashMap<>();
+		for (FortData fort : cell.getFortsList()) {
+			forts.put(fort.getId(), fort);
+		}
+		for (FortData fort : delta.getFortsList()) {
+			forts.put(fort.getId(), fort);
+		}
+		for (String deleted : delta.getDeletedObjectsList()) {
+			forts.remove(deleted);
+		}
+
+		MapCell.Builder builder = delta.toBuilder()
+				.clearForts()
+				.addAllForts(forts.values())
+				.clearDeletedObjects();
+		if (delta.getSpawnPointsCount() == 0) {
+			builder.addAllSpawnPoints(cell.getSpawnPointsList());
+		}
+		if (delta.getDecimatedSpawnPointsCount() == 0) {
+			builder.addAllDecimatedSpawnPoints(cell.getDecimatedSpawnPointsList());
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Marks all cells as outdated, so they are requested again. Their contents are kept to merge the next delta into.
+	 */
+	public synchronized void expire() {
+		for (CachedCell cached : cells.values()) {
+			cached.lastUpdate = 0;
+		}
+	}
+
+	/**
+	 * Removes all cells from this cache
+	 */
+	public synchronized void clear() {
+		cells.clear();
+	}
+
+	public synchronized int getMaxCells() {
+		return maxCells;
+	}
+
+	/**
+	 * Sets how many cells are kept, the least recently used ones are dropped first
+	 *
+	 * @param maxCells the maximum amount of cells
+	 */
+	public synchronized void setMaxCells(int maxCells) {
+		if (maxCells < 1) {
+			throw new IllegalArgumentException("Must cache at least one cell");
+		}
+		this.maxCells = maxCells;
+		trim();
+	}
+
+	public synchronized int size() {
+		return cells.size();
+	}
+
+	private void trim() {
+		while (cells.size() > maxCells) {
+			Long eldest = cells.keySet().iterator().next();
+			cells.remove(eldest);
+		}
+	}
+
+	private static class CachedCell {
+		private final MapCell cell;
+		private long lastUpdate;
+		private boolean seeded;
+
+		CachedCell(MapCell cell, long lastUpdate) {
+			this.cell = cell;
+			this.lastUpdate = lastUpdate;
+		}
+	}
+}
@@ -17,153 +17,247 @@ package com.pokegoapi.api.map;
 
 import com.pokegoapi.api.PokemonGo;
 import com.pokegoapi.api.map.fort.Pokestop;
+import com.pokegoapi.util.ConcatenatedList;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 import POGOProtos.Map.Fort.FortDataOuterClass.FortData;
+import POGOProtos.Map.Fort.FortTypeOuterClass.FortType;
+import POGOProtos.Map.MapCellOuterClass.MapCell;
 import POGOProtos.Map.Pokemon.MapPokemonOuterClass.MapPokemon;
 import POGOProtos.Map.Pokemon.NearbyPokemonOuterClass.NearbyPokemon;
 import POGOProtos.Map.Pokemon.WildPokemonOuterClass.WildPokemon;
 import POGOProtos.Map.SpawnPointOuterClass.SpawnPoint;
+import POGOProtos.Networking.Responses.GetMapObjectsResponseOuterClass.GetMapObjectsResponse;
 import lombok.Getter;
 import lombok.ToString;
 
-@ToString
+/**
+ * An immutable snapshot of the objects in some map cells. A new snapshot is published for every refresh, so it can be
+ * read from any thread without locking. The collections are unmodifiable views that share the lists of the map cells
+ * they were built from, each of them is only collected from the cells when it is first requested.
+ */
+@ToString(exclude = {"api", "mapCells", "response", "pokestopForts"})
 public class MapObjects {
-
-	@Getter
-	private final Collection<NearbyPokemon> nearbyPokemons = Collections.synchronizedCollection(
-			new ArrayList<NearbyPokemon>()
-	);
-	@Getter
-	private final Collection<MapPokemon> catchablePokemons = Collections.synchronizedCollection(
-			new ArrayList<MapPokemon>()
-	);
-	@Getter
-	private final Collection<WildPokemon> wildPokemons = Collections.synchronizedCollection(
-			new ArrayList<WildPokemon>()
-	);
-	@Getter
-	private final Collection<SpawnPoint> decimatedSpawnPoints = Collections.synchronizedCollection(
-			new ArrayList<SpawnPoint>()
-	);
-	@Getter
-	private final Collection<SpawnPoint> spawnPoints = Collections.synchronizedCollection(
-			new ArrayList<SpawnPoint>()
-	);
-	@Getter
-	private final Collection<FortData> gyms = Collections.synchronizedCollection(
-			new ArrayList<FortData>()
-	);
-	@Getter
-	private final Collection<Pokestop> pokestops = Collections.synchronizedCollection(
-			new ArrayList<Pokestop>()
-	);
-	boolean complete = false;
 	private final PokemonGo api;
+	private final List<MapCell> mapCells;
+	@Getter
+	private final GetMapObjectsResponse response;
+	private final boolean complete;
+
+	// collected on first access, racing threads collect equal lists
+	private volatile Collection<NearbyPokemon> nearbyPokemons;
+	private volatile Collection<MapPokemon> catchablePokemons;
+	private volatile Collection<WildPokemon> wildPokemons;
+	private volatile Collection<SpawnPoint> decimatedSpawnPoints;
+	private volatile Collection<SpawnPoint> spawnPoints;
+	private volatile Collection<FortData> gyms;
+	private volatile Collection<FortData> pokestopForts;
+	private volatile Collection<Pokestop> pokestops;
 
 	/**
-	 * Instantiates a new Map objects.
+	 * Instantiates empty Map objects.
 	 *
 	 * @param api the api
 	 */
 	public MapObjects(PokemonGo api) {
+		this(new Builder(api));
+	}
+
+	/**
+	 * Instantiates Map objects that are collected from the given cells when requested
+	 *
+	 * @param api the api
+	 * @param mapCells the cells
+	 * @param response the response the cells were merged from, or null if they came from the cache
+	 */
+	MapObjects(PokemonGo api, List<MapCell> mapCells, GetMapObjectsResponse response) {
 		this.api = api;
+		this.mapCells = mapCells;
+		this.response = response;
+		boolean hasData = false;
+		for (MapCell mapCell : mapCells) {
+			if (mapCell.getNearbyPokemonsCount() > 0 || mapCell.getCatchablePokemonsCount() > 0
+					|| mapCell.getWildPokemonsCount() > 0 || mapCell.getDecimatedSpawnPointsCount() > 0
+					|| mapCell.getSpawnPointsCount() > 0 || mapCell.getFortsCount() > 0) {
+				hasData = true;
+				break;
+			}
+		}
+		this.complete = hasData;
+	}
+
+	private MapObjects(Builder builder) {
+		this.api = builder.api;
+		this.mapCells = Collections.emptyList();
+		this.response = null;
+		this.nearbyPokemons = new ConcatenatedList<>(builder.nearbyPokemons);
+		this.catchablePokemons = new ConcatenatedList<>(builder.catchablePokemons);
+		this.wildPokemons = new ConcatenatedList<>(builder.wildPokemons);
+		this.decimatedSpawnPoints = new ConcatenatedList<>(builder.decimatedSpawnPoints);
+		this.spawnPoints = new ConcatenatedList<>(builder.spawnPoints);
+		this.gyms = new ConcatenatedList<>(builder.gyms);
+		this.pokestops = new ConcatenatedList<>(builder.pokestops);
+		this.complete = builder.complete;
 	}
 
 	/**
-	 * Add nearby pokemons.
+	 * Gets the nearby pokemons
 	 *
-	 * @param nearbyPokemons the nearby pokemons
+	 * @return the nearby pokemons
 	 */
-	public void addNearbyPokemons(Collection<NearbyPokemon> nearbyPokemons) {
-		if (nearbyPokemons == null || nearbyPokemons.isEmpty()) {
-			return;
+	public Collection<NearbyPokemon> getNearbyPokemons() {
+		Collection<NearbyPokemon> result = nearbyPokemons;
+		if (result == null) {
+			List<List<NearbyPokemon>> parts = new ArrayList<>(mapCells.size());
+			for (MapCell mapCell : mapCells) {
+				parts.add(mapCell.getNearbyPokemonsList());
+			}
+			result = new ConcatenatedList<>(parts);
+			nearbyPokemons = result;
 		}
-		complete = true;
-		this.nearbyPokemons.addAll(nearbyPokemons);
+		return result;
 	}
 
 	/**
-	 * Add catchable pokemons.
+	 * Gets the catchable pokemons
 	 *
-	 * @param catchablePokemons the catchable pokemons
+	 * @return the catchable pokemons
 	 */
-	public void addCatchablePokemons(Collection<MapPokemon> catchablePokemons) {
-		if (catchablePokemons == null || catchablePokemons.isEmpty()) {
-			return;
+	public Collection<MapPokemon> getCatchablePokemons() {
+		Collection<MapPokemon> result = catchablePokemons;
+		if (result == null) {
+			List<List<MapPokemon>> parts = new ArrayList<>(mapCells.size());
+			for (MapCell mapCell : mapCells) {
+				parts.add(mapCell.getCatchablePokemonsList());
+			}
+			result = new ConcatenatedList<>(parts);
+			catchablePokemons = result;
 		}
-		complete = true;
-		this.catchablePokemons.addAll(catchablePokemons);
+		return result;
 	}
 
 	/**
-	 * Add wild pokemons.
+	 * Gets the wild pokemons
 	 *
-	 * @param wildPokemons the wild pokemons
+	 * @return the wild pokemons
 	 */
-	public void addWildPokemons(Collection<WildPokemon> wildPokemons) {
-		if (wildPokemons == null || wildPokemons.isEmpty()) {
-			return;
+	public Collection<WildPokemon> getWildPokemons() {
+		Collection<WildPokemon> result = wildPokemons;
+		if (result == null) {
+			List<List<WildPokemon>> parts = new ArrayList<>(mapCells.size());
+			for (MapCell mapCell : mapCells) {
+				parts.add(mapCell.getWildPokemonsList());
+			}
+			result = new ConcatenatedList<>(parts);
+			wildPokemons = result;
 		}
-		complete = true;
-		this.wildPokemons.addAll(wildPokemons);
+		return result;
 	}
 
 	/**
-	 * Add decimated spawn points.
+	 * Gets the decimated spawn points
 	 *
-	 * @param decimatedSpawnPoints the decimated spawn points
+	 * @return the decimated spawn points
 	 */
-	public void addDecimatedSpawnPoints(Collection<SpawnPoint> decimatedSpawnPoints) {
-		if (decimatedSpawnPoints == null || decimatedSpawnPoints.isEmpty()) {
-			return;
+	public Collection<SpawnPoint> getDecimatedSpawnPoints() {
+		Collection<SpawnPoint> result = decimatedSpawnPoints;
+		if (result == null) {
+			List<List<SpawnPoint>> parts = new ArrayList<>(mapCells.size());
+			for (MapCell mapCell : mapCells) {
+				parts.add(mapCell.getDecimatedSpawnPointsList());
+			}
+			result = new ConcatenatedList<>(parts);
+			decimatedSpawnPoints = result;
 		}
-		complete = true;
-		this.decimatedSpawnPoints.addAll(decimatedSpawnPoints);
+		return result;
 	}
 
 	/**
-	 * Add spawn points.
+	 * Gets the spawn points
 	 *
-	 * @param spawnPoints the spawn points
+	 * @return the spawn points
 	 */
-	public void addSpawnPoints(Collection<SpawnPoint> spawnPoints) {
-		if (spawnPoints == null || spawnPoints.isEmpty()) {
-			return;
+	public Collection<SpawnPoint> getSpawnPoints() {
+		Collection<SpawnPoint> result = spawnPoints;
+		if (result == null) {
+			List<List<SpawnPoint>> parts = new ArrayList<>(mapCells.size());
+			for (MapCell mapCell : mapCells) {
+				parts.add(mapCell.getSpawnPointsList());
+			}
+			result = new ConcatenatedList<>(parts);
+			spawnPoints = result;
 		}
-		complete = true;
-		this.spawnPoints.addAll(spawnPoints);
+		return result;
 	}
 
 	/**
-	 * Add gyms.
+	 * Gets the gyms
 	 *
-	 * @param gyms the gyms
+	 * @return the gyms
 	 */
-	public void addGyms(Collection<FortData> gyms) {
-		if (gyms == null || gyms.isEmpty()) {
-			return;
+	public Collection<FortData> getGyms() {
+		if (gyms == null) {
+			partitionForts();
 		}
-		complete = true;
-		this.gyms.addAll(gyms);
+		return gyms;
 	}
 
 	/**
-	 * Add pokestops.
+	 * Gets the pokestops, they are only wrapped when first requested
 	 *
-	 * @param pokestops the pokestops
+	 * @return the pokestops
 	 */
-	public void addPokestops(Collection<FortData> pokestops) {
-		if (pokestops == null || pokestops.isEmpty()) {
-			return;
+	public Collection<Pokestop> getPokestops() {
+		Collection<Pokestop> result = pokestops;
+		if (result == null) {
+			synchronized (this) {
+				result = pokestops;
+				if (result == null) {
+					if (pokestopForts == null) {
+						partitionForts();
+					}
+					List<Pokestop> wrapped = new ArrayList<>(pokestopForts.size());
+					for (FortData fortData : pokestopForts) {
+						wrapped.add(new Pokestop(api, fortData));
+					}
+					result = Collections.unmodifiableList(wrapped);
+					pokestops = result;
+				}
+			}
 		}
-		complete = true;
-		for (FortData pokestop : pokestops) {
-			this.pokestops.add(new Pokestop(api, pokestop));
+		return result;
+	}
+
+	/**
+	 * Splits the forts of all cells into gyms and pokestops in a single pass
+	 */
+	private void partitionForts() {
+		List<FortData> gymList = new ArrayList<>();
+		List<FortData> pokestopList = new ArrayList<>();
+		for (MapCell mapCell : mapCells) {
+			for (FortData fortData : mapCell.getFortsList()) {
+				if (fortData.getType() == FortType.GYM) {
+					gymList.add(fortData);
+				} else if (fortData.getType() == FortType.CHECKPOINT) {
+					pokestopList.add(fortData);
+				}
+			}
 		}
+		pokestopForts = Collections.unmodifiableList(pokestopList);
+		gyms = Collections.unmodifiableList(gymList);
+	}
+
+	/**
+	 * Gets the cells these objects are collected from
+	 *
+	 * @return the map cells, empty if these objects were built by a {@link Builder}
+	 */
+	public List<MapCell> getMapCells() {
+		return Collections.unmodifiableList(mapCells);
 	}
 
 	/**
@@ -176,53 +270,127 @@ public class MapObjects {
 		return complete;
 	}
 
-
 	/**
-	 * updates the object.
-	 *
-	 * @param other Update this {@link MapObjects} data with the provided data.
+	 * Collects the objects of a new snapshot. Lists that are added are shared with the snapshot instead of copied,
+	 * like the (immutable) lists of a MapCell, other collections are copied.
 	 */
-	@Deprecated
-	public void update(MapObjects other) {
+	public static class Builder {
+		private final PokemonGo api;
+		private final List<List<NearbyPokemon>> nearbyPokemons = new ArrayList<>();
+		private final List<List<MapPokemon>> catchablePokemons = new ArrayList<>();
+		private final List<List<WildPokemon>> wildPokemons = new ArrayList<>();
+		private final List<List<SpawnPoint>> decimatedSpawnPoints = new ArrayList<>();
+		private final List<List<SpawnPoint>> spawnPoints = new ArrayList<>();
+		private final List<List<FortData>> gyms = new ArrayList<>();
+		private final List<List<Pokestop>> pokestops = new ArrayList<>();
+		private boolean complete;
 
-		nearbyPokemons.clear();
-		addNearbyPokemons(other.getNearbyPokemons());
+		/**
+		 * Creates a builder for a new snapshot
+		 *
+		 * @param api the api
+		 */
+		public Builder(PokemonGo api) {
+			this.api = api;
+		}
 
-		catchablePokemons.clear();
-		addCatchablePokemons(other.getCatchablePokemons());
+		/**
+		 * Add nearby pokemons.
+		 *
+		 * @param nearbyPokemons the nearby pokemons
+		 * @return this builder
+		 */
+		public Builder addNearbyPokemons(Collection<NearbyPokemon> nearbyPokemons) {
+			add(this.nearbyPokemons, nearbyPokemons);
+			return this;
+		}
 
-		wildPokemons.clear();
-		addWildPokemons(other.getWildPokemons());
+		/**
+		 * Add catchable pokemons.
+		 *
+		 * @param catchablePokemons the catchable pokemons
+		 * @return this builder
+		 */
+		public Builder addCatchablePokemons(Collection<MapPokemon> catchablePokemons) {
+			add(this.catchablePokemons, catchablePokemons);
+			return this;
+		}
 
-		decimatedSpawnPoints.clear();
-		addDecimatedSpawnPoints(other.getDecimatedSpawnPoints());
+		/**
+		 * Add wild pokemons.
+		 *
+		 * @param wildPokemons the wild pokemons
+		 * @return this builder
+		 */
+		public Builder addWildPokemons(Collection<WildPokemon> wildPokemons) {
+			add(this.wildPokemons, wildPokemons);
+			return this;
+		}
 
-		spawnPoints.clear();
-		addSpawnPoints(other.getSpawnPoints());
+		/**
+		 * Add decimated spawn points.
+		 *
+		 * @param decimatedSpawnPoints the decimated spawn points
+		 * @return this builder
+		 */
+		public Builder addDecimatedSpawnPoints(Collection<SpawnPoint> decimatedSpawnPoints) {
+			add(this.decimatedSpawnPoints, decimatedSpawnPoints);
+			return this;
+		}
 
+		/**
+		 * Add spawn points.
+		 *
+		 * @param spawnPoints the spawn points
+		 * @return this builder
+		 */
+		public Builder addSpawnPoints(Collection<SpawnPoint> spawnPoints) {
+			add(this.spawnPoints, spawnPoints);
+			return this;
+		}
 
-		/* for (FortData otherGym: other.getGyms()) {
-			Iterator<FortData> iterator = gyms.iterator();
-			while (iterator.hasNext()) {
-				FortData gym = iterator.next();
-				if (otherGym.getId().equals(gym.getId())) {
-					gyms.remove(gym);
-					break;
-				}
+		/**
+		 * Add gyms.
+		 *
+		 * @param gyms the gyms
+		 * @return this builder
+		 */
+		public Builder addGyms(Collection<FortData> gyms) {
+			add(this.gyms, gyms);
+			return this;
+		}
+
+		/**
+		 * Add pokestops.
+		 *
+		 * @param pokestops the pokestops
+		 * @return this builder
+		 */
+		public Builder addPokestops(Collection<FortData> pokestops) {
+			if (pokestops == null || pokestops.isEmpty()) {
+				return this;
+			}
+			List<Pokestop> wrapped = new ArrayList<>(pokestops.size());
+			for (FortData pokestop : pokestops) {
+				wrapped.add(new Pokestop(api, pokestop));
 			}
-			gyms.add(otherGym);
+			// nobody else holds the wrapped list, so it does not need another copy
+			this.pokestops.add(Collections.unmodifiableList(wrapped));
+			complete = true;
+			return this;
 		}
 
-		/*for (Pokestop otherPokestop: other.getPokestops()) {
-			Iterator<Pokestop> iterator = pokestops.iterator();
-			while (iterator.hasNext()) {
-				Pokestop pokestop = iterator.next();
-				if (otherPokestop.getId().equals(pokestop.getId())) {
-					pokestops.remove(pokestop);
-					break;
-				}
+		private <T> void add(List<List<T>> parts, Collection<T> values) {
+			if (values == null || values.isEmpty()) {
+				return;
 			}
-			pokestops.add(otherPokestop);
-		}*/
+			complete = true;
+			// the caller may still change its collection, while the concatenated lists fix their sizes when built
+			parts.add(Collections.unmodifiableList(new ArrayList<>(values)));
+		}
+
+		public MapObjects build() {
+			return new MapObjects(this);
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,233 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.api.map;
+
+import POGOProtos.Map.MapCellOuterClass.MapCell;
+import POGOProtos.Map.Pokemon.MapPokemonOuterClass.MapPokemon;
+import POGOProtos.Map.Pokemon.WildPokemonOuterClass.WildPokemon;
+import POGOProtos.Map.SpawnPointOuterClass.SpawnPoint;
+import com.pokegoapi.google.common.geometry.S2CellId;
+import com.pokegoapi.google.common.geometry.S2LatLng;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Learns when pokemon appear on each spawn point from the map cells returned by GET_MAP_OBJECTS, so cells only need
+ * to be requested again when a spawn in them is due.
+ */
+public class SpawnTimeline {
+	private final HashMap<Long, TimedSpawnPoint> spawnPoints = new HashMap<>();
+	private final HashMap<Long, CellTimeline> cells = new HashMap<>();
+
+	/**
+	 * Records the spawn points and pokemon of the given cells
+	 *
+	 * @param mapCells the cells of a GET_MAP_OBJECTS response
+	 * @param now the current time
+	 */
+	public synchronized void record(List<MapCell> mapCells, long now) {
+		for (MapCell mapCell : mapCells) {
+			// cells without a timestamp were not scanned
+			if (mapCell.getCurrentTimestampMs() == 0) {
+				continue;
+			}
+			long cellId = mapCell.getS2CellId();
+			getCell(cellId).lastScan = now;
+			for (SpawnPoint spawnPoint : mapCell.getSpawnPointsList()) {
+				getSpawnPoint(cellId, spawnPoint.getLatitude(), spawnPoint.getLongitude());
+			}
+			for (WildPokemon pokemon : mapCell.getWildPokemonsList()) {
+				long timeTillHidden = pokemon.getTimeTillHiddenMs();
+				// the timer is only valid for the last hour of a spawn
+				long despawnTime = timeTillHidden > 0 && timeTillHidden <= TimedSpawnPoint.HOUR
+						? now + timeTillHidden : TimedSpawnPoint.UNKNOWN;
+				observe(cellId, pokemon.getLatitude(), pokemon.getLongitude(), pokemon.getSpawnPointId(),
+						despawnTime, now);
+			}
+			for (MapPokemon pokemon : mapCell.getCatchablePokemonsList()) {
+				long despawnTime = pokemon.getExpirationTimestampMs() > 0
+						? pokemon.getExpirationTimestampMs() : TimedSpawnPoint.UNKNOWN;
+				observe(cellId, pokemon.getLatitude(), pokemon.getLongitude(), pokemon.getSpawnPointId(),
+						despawnTime, now);
+			}
+		}
+	}
+
+	private void observe(long cellId, double latitude, double longitude, String id, long despawnTime, long now) {
+		TimedSpawnPoint spawnPoint = getSpawnPoint(cellId, latitude, longitude).observe(id, despawnTime, now);
+		spawnPoints.put(getKey(latitude, longitude), spawnPoint);
+		getCell(cellId).spawnPoints.put(getKey(latitude, longitude), spawnPoint);
+	}
+
+	private TimedSpawnPoint getSpawnPoint(long cellId, double latitude, double longitude) {
+		long key = getKey(latitude, longitude);
+		TimedSpawnPoint spawnPoint = spawnPoints.get(key);
+		if (spawnPoint == null) {
+			spawnPoint = new TimedSpawnPoint(cellId, latitude, longitude, null, TimedSpawnPoint.UNKNOWN,
+					TimedSpawnPoint.MIN_DURATION, 0);
+			spawnPoints.put(key, spawnPoint);
+			getCell(cellId).spawnPoints.put(key, spawnPoint);
+		}
+		return spawnPoint;
+	}
+
+	private CellTimeline getCell(long cellId) {
+		CellTimeline cell = cells.get(cellId);
+		if (cell == null) {
+			cell = new CellTimeline();
+			cells.put(cellId, cell);
+		}
+		return cell;
+	}
+
+	/**
+	 * Adds spawn points that were learned before, for example from a {@link WorldStore}. Their cells count as
+	 * scanned when their spawn points were last seen, spawn points that are known already are kept.
+	 *
+	 * @param restored the spawn points
+	 */
+	public synchronized void restore(Collection<TimedSpawnPoint> restored) {
+		for (TimedSpawnPoint spawnPoint : restored) {
+			long key = getKey(spawnPoint.getLatitude(), spawnPoint.getLongitude());
+			if (spawnPoints.containsKey(key)) {
+				continue;
+			}
+			spawnPoints.put(key, spawnPoint);
+			CellTimeline cell = getCell(spawnPoint.getCellId());
+			cell.spawnPoints.put(key, spawnPoint);
+			cell.lastScan = Math.max(cell.lastScan, spawnPoint.getLastSeen());
+		}
+	}
+
+	/**
+	 * Checks whether a cell should be requested, which is when it was never scanned, when a spawn in it appeared
+	 * since its last scan and is still visible, or when it holds a spawn with unknown timing that was not scanned
+	 * for as long as any spawn is visible.
+	 *
+	 * @param cellId the (level 15) cell id
+	 * @param now the current time
+	 * @return true if the cell is due
+	 */
+	public synchronized boolean isDue(long cellId, long now) {
+		CellTimeline cell = cells.get(cellId);
+		if (cell == null || cell.lastScan == 0) {
+			return true;
+		}
+		for (TimedSpawnPoint spawnPoint : cell.spawnPoints.values()) {
+			if (spawnPoint.isTimed()) {
+				if (spawnPoint.isActive(now) && cell.lastScan < spawnPoint.getLastSpawn(now)) {
+					return true;
+				}
+			} else if (now - cell.lastScan >= TimedSpawnPoint.MIN_DURATION) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Filters the given cells down to the cells that are due
+	 *
+	 * @param cellIds the cell ids
+	 * @param now the current time
+	 * @return the due cells, in the given order
+	 */
+	public synchronized List<Long> getDueCells(Collection<Long> cellIds, long now) {
+		List<Long> due = new ArrayList<>();
+		for (Long cellId : cellIds) {
+			if (isDue(cellId, now)) {
+				due.add(cellId);
+			}
+		}
+		return due;
+	}
+
+	/**
+	 * Gets when the next of the given cells becomes due
+	 *
+	 * @param cellIds the cell ids
+	 * @param now the current time
+	 * @return now if a cell is due already, or {@link Long#MAX_VALUE} if none of the cells hold spawn points
+	 */
+	public synchronized long getNextDueTime(Collection<Long> cellIds, long now) {
+		long next = Long.MAX_VALUE;
+		for (Long cellId : cellIds) {
+			if (isDue(cellId, now)) {
+				return now;
+			}
+			CellTimeline cell = cells.get(cellId);
+			for (TimedSpawnPoint spawnPoint : cell.spawnPoints.values()) {
+				if (spawnPoint.isTimed()) {
+					next = Math.min(next, spawnPoint.getNextSpawn(now));
+				} else {
+					next = Math.min(next, cell.lastScan + TimedSpawnPoint.MIN_DURATION);
+				}
+			}
+		}
+		return Math.max(next, now);
+	}
+
+	/**
+	 * Gets when a cell was last scanned
+	 *
+	 * @param cellId the cell id
+	 * @return the time of the last scan, or 0 if it was never scanned
+	 */
+	public synchronized long getLastScan(long cellId) {
+		CellTimeline cell = cells.get(cellId);
+		return cell != null ? cell.lastScan : 0;
+	}
+
+	/**
+	 * Gets the spawn points in a cell
+	 *
+	 * @param cellId the cell id
+	 * @return the known spawn points of the cell
+	 */
+	public synchronized List<TimedSpawnPoint> getSpawnPoints(long cellId) {
+		CellTimeline cell = cells.get(cellId);
+		return cell != null ? new ArrayList<>(cell.spawnPoints.values()) : new ArrayList<TimedSpawnPoint>();
+	}
+
+	public synchronized List<TimedSpawnPoint> getSpawnPoints() {
+		return new ArrayList<>(spawnPoints.values());
+	}
+
+	public synchronized int size() {
+		return spawnPoints.size();
+	}
+
+	/**
+	 * Forgets all spawn points and scans
+	 */
+	public synchronized void clear() {
+		spawnPoints.clear();
+		cells.clear();
+	}
+
+	private static long getKey(double latitude, double longitude) {
+		return S2CellId.fromLatLng(S2LatLng.fromDegrees(latitude, longitude)).id();
+	}
+
+	private static class CellTimeline {
+		private final LinkedHashMap<Long, TimedSpawnPoint> spawnPoints = new LinkedHashMap<>();
+		private long lastScan;
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.api.map;
+
+import com.pokegoapi.util.MapPoint;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A spawn point with what was learned about its hourly timing
+ */
+@ToString
+public class TimedSpawnPoint implements MapPoint {
+	public static final long HOUR = 60 * 60 * 1000;
+	// every spawn is visible for at least 15 minutes
+	public static final long MIN_DURATION = 15 * 60 * 1000;
+	public static final long UNKNOWN = -1;
+	// despawn times seen for the same spawn differ by a few seconds
+	private static final long OFFSET_TOLERANCE = 60 * 1000;
+
+	@Getter
+	private final long cellId;
+	@Getter
+	private final double latitude;
+	@Getter
+	private final double longitude;
+	@Getter
+	private final String spawnPointId;
+	/**
+	 * Milliseconds into the hour at which the pokemon despawns, or {@link #UNKNOWN}
+	 */
+	@Getter
+	private final long despawnOffset;
+	/**
+	 * How long a pokemon is visible at least, grows when a pokemon is seen earlier before its despawn
+	 */
+	@Getter
+	private final long duration;
+	@Getter
+	private final long lastSeen;
+
+	TimedSpawnPoint(long cellId, double latitude, double longitude, String spawnPointId, long despawnOffset,
+			long duration, long lastSeen) {
+		this.cellId = cellId;
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.spawnPointId = spawnPointId;
+		this.despawnOffset = despawnOffset;
+		this.duration = duration;
+		this.lastSeen = lastSeen;
+	}
+
+	public boolean isTimed() {
+		return despawnOffset != UNKNOWN;
+	}
+
+	/**
+	 * Gets the milliseconds into the hour at which a pokemon appears
+	 *
+	 * @return the offset, or {@link #UNKNOWN}
+	 */
+	public long getSpawnOffset() {
+		return isTimed() ? floorMod(despawnOffset - duration) : UNKNOWN;
+	}
+
+	/**
+	 * Gets when a pokemon last appeared here
+	 *
+	 * @param now the current time
+	 * @return the latest spawn time not after now, or {@link #UNKNOWN}
+	 */
+	public long getLastSpawn(long now) {
+		return isTimed() ? now - floorMod(now - getSpawnOffset()) : UNKNOWN;
+	}
+
+	/**
+	 * Gets when a pokemon appears here next
+	 *
+	 * @param now the current time
+	 * @return the first spawn time after now, or {@link #UNKNOWN}
+	 */
+	public long getNextSpawn(long now) {
+		return isTimed() ? getLastSpawn(now) + HOUR : UNKNOWN;
+	}
+
+	/**
+	 * Checks whether a pokemon is visible here
+	 *
+	 * @param now the current time
+	 * @return true if the timing is known and a pokemon is visible at the given time
+	 */
+	public boolean isActive(long now) {
+		return isTimed() && now - getLastSpawn(now) < duration;
+	}
+
+	/**
+	 * Returns this spawn point updated with a pokemon seen on it
+	 *
+	 * @param id the spawn point id, or null if unknown
+	 * @param despawnTime when the pokemon despawns, or {@link #UNKNOWN}
+	 * @param now when the pokemon was seen
+	 * @return the updated spawn point
+	 */
+	TimedSpawnPoint observe(String id, long despawnTime, long now) {
+		String observedId = id != null ? id : spawnPointId;
+		if (despawnTime == UNKNOWN || despawnTime <= now || despawnTime - now > HOUR) {
+			return new TimedSpawnPoint(cellId, latitude, longitude, observedId, despawnOffset, duration, now);
+		}
+		long offset = floorMod(despawnTime);
+		// a different despawn time means the timing changed, so start learning the duration again
+		long observedDuration = isSameOffset(offset) ? duration : MIN_DURATION;
+		observedDuration = Math.max(observedDuration, Math.min(HOUR, despawnTime - now));
+		return new TimedSpawnPoint(cellId, latitude, longitude, observedId, offset, observedDuration, now);
+	}
+
+	private boolean isSameOffset(long offset) {
+		if (!isTimed()) {
+			return false;
+		}
+		long difference = floorMod(offset - despawnOffset);
+		return Math.min(difference, HOUR - difference) <= OFFSET_TOLERANCE;
+	}
+
+	private static long floorMod(long time) {
+		return ((time % HOUR) + HOUR) % HOUR;
+	}
+}
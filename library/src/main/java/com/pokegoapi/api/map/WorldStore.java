@@ -0,0 +1,490 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.api.map;
+
+import POGOProtos.Map.Fort.FortDataOuterClass.FortData;
+import POGOProtos.Networking.Responses.FortDetailsResponseOuterClass.FortDetailsResponse;
+import com.pokegoapi.google.common.geometry.S2CellId;
+import com.pokegoapi.google.common.geometry.S2LatLng;
+import lombok.Getter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps forts, fort details and spawn points on disk, keyed by their level 15 cell, so they do not have to be
+ * learned from the server again after a restart. The file is an append-only log that is read completely when the
+ * store is opened, every change appends a record and outdated records are dropped by {@link #compact()}.
+ */
+public class WorldStore implements Closeable {
+	private static final int MAGIC = 0x50475753;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 8;
+
+	private static final byte FORT = 1;
+	private static final byte FORT_REMOVED = 2;
+	private static final byte FORT_DETAILS = 3;
+	private static final byte SPAWN_POINT = 4;
+
+	// compact when the log holds this many times more records than there are live entries
+	private static final int COMPACT_RATIO = 4;
+	private static final int COMPACT_MIN_RECORDS = 4096;
+
+	@Getter
+	private final File file;
+	private final HashMap<Long, StoredCell> cells = new HashMap<>();
+	private final HashMap<String, Long> fortCells = new HashMap<>();
+	private final HashMap<String, FortDetailsResponse> fortDetails = new HashMap<>();
+	private final HashMap<String, Long> fortDetailsTimes = new HashMap<>();
+	private DataOutputStream output;
+	private int records;
+
+	/**
+	 * Opens a store, loading everything that is already stored in the given file
+	 *
+	 * @param file the file to store in, it is created if it does not exist
+	 * @throws IOException if the file cannot be read, is no store or cannot be written
+	 */
+	public WorldStore(File file) throws IOException {
+		this.file = file;
+		File temporary = getTemporaryFile();
+		if (!file.exists() && temporary.exists() && !temporary.renameTo(file)) {
+			throw new IOException("Could not restore " + file + " from " + temporary);
+		}
+		long length = file.exists() ? load() : 0;
+		if (length == 0) {
+			output = openOutput(file, false);
+			writeHeader(output);
+			output.flush();
+		} else {
+			// drop a record that was only partly written when the last process stopped
+			RandomAccessFile randomAccess = new RandomAccessFile(file, "rw");
+			try {
+				randomAccess.setLength(length);
+			} finally {
+				randomAccess.close();
+			}
+			output = openOutput(file, true);
+		}
+	}
+
+	/**
+	 * Reads all records of the file
+	 *
+	 * @return the length of the valid part of the file
+	 */
+	private long load() throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if (file.length() < HEADER_SIZE) {
+				return 0;
+			}
+			if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+				throw new IOException(file + " is no world store");
+			}
+			long length = HEADER_SIZE;
+			while (true) {
+				byte type;
+				long cellId;
+				byte[] payload;
+				try {
+					type = input.readByte();
+					cellId = input.readLong();
+					payload = new byte[input.readInt()];
+					input.readFully(payload);
+				} catch (EOFException e) {
+					return length;
+				}
+				apply(type, cellId, payload);
+				records++;
+				length += 1 + 8 + 4 + payload.length;
+			}
+		} finally {
+			input.close();
+		}
+	}
+
+	private void apply(byte type, long cellId, byte[] payload) throws IOException {
+		switch (type) {
+			case FORT:
+				storeFort(cellId, FortData.parseFrom(payload));
+				break;
+			case FORT_REMOVED:
+				removeFort(new DataInputStream(new ByteArrayInputStream(payload)).readUTF());
+				break;
+			case FORT_DETAILS:
+				DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+				long time = input.readLong();
+				storeFortDetails(FortDetailsResponse.parseFrom(input), time);
+				break;
+			case SPAWN_POINT:
+				TimedSpawnPoint spawnPoint = readSpawnPoint(cellId, payload);
+				getCell(cellId).spawnPoints.put(getKey(spawnPoint), spawnPoint);
+				break;
+			default:
+				throw new IOException("Unknown record type " + type + " in " + file);
+		}
+	}
+
+	/**
+	 * Stores the forts of a cell, only forts that changed are written
+	 *
+	 * @param cellId the cell id
+	 * @param forts the forts in the cell
+	 * @throws IOException if the store cannot be written
+	 */
+	public synchronized void putForts(long cellId, Collection<FortData> forts) throws IOException {
+		boolean written = false;
+		for (FortData fort : forts) {
+			StoredCell cell = cells.get(cellId);
+			FortData stored = cell != null ? cell.forts.get(fort.getId()) : null;
+			if (!fort.equals(stored)) {
+				storeFort(cellId, fort);
+				write(FORT, cellId, fort.toByteArray());
+				written = true;
+			}
+		}
+		finish(written);
+	}
+
+	/**
+	 * Removes forts, for example the deleted objects of a map cell
+	 *
+	 * @param fortIds the ids of the forts
+	 * @throws IOException if the store cannot be written
+	 */
+	public synchronized void removeForts(Collection<String> fortIds) throws IOException {
+		boolean written = false;
+		for (String fortId : fortIds) {
+			Long cellId = fortCells.get(fortId);
+			if (cellId != null) {
+				removeFort(fortId);
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				new DataOutputStream(bytes).writeUTF(fortId);
+				write(FORT_REMOVED, cellId, bytes.toByteArray());
+				written = true;
+			}
+		}
+		finish(written);
+	}
+
+	/**
+	 * Stores the details of a fort
+	 *
+	 * @param details the details
+	 * @param time the time the details were fetched
+	 * @throws IOException if the store cannot be written
+	 */
+	public synchronized void putFortDetails(FortDetailsResponse details, long time) throws IOException {
+		if (!details.equals(fortDetails.get(details.getFortId())) || time != getFortDetailsTime(details.getFortId())) {
+			storeFortDetails(details, time);
+			write(FORT_DETAILS, getCellId(details.getLatitude(), details.getLongitude()),
+					writeFortDetails(details, time));
+			finish(true);
+		}
+	}
+
+	/**
+	 * Stores spawn points, only spawn points with a changed timing are written
+	 *
+	 * @param spawnPoints the spawn points
+	 * @throws IOException if the store cannot be written
+	 */
+	public synchronized void putSpawnPoints(Collection<TimedSpawnPoint> spawnPoints) throws IOException {
+		boolean written = false;
+		for (TimedSpawnPoint spawnPoint : spawnPoints) {
+			StoredCell cell = getCell(spawnPoint.getCellId());
+			TimedSpawnPoint stored = cell.spawnPoints.get(getKey(spawnPoint));
+			if (stored == null || stored.getDespawnOffset() != spawnPoint.getDespawnOffset()
+					|| stored.getDuration() != spawnPoint.getDuration()
+					|| (stored.getSpawnPointId() == null && spawnPoint.getSpawnPointId() != null)) {
+				cell.spawnPoints.put(getKey(spawnPoint), spawnPoint);
+				write(SPAWN_POINT, spawnPoint.getCellId(), writeSpawnPoint(spawnPoint));
+				written = true;
+			}
+		}
+		finish(written);
+	}
+
+	/**
+	 * Gets the stored forts of a cell
+	 *
+	 * @param cellId the cell id
+	 * @return the forts
+	 */
+	public synchronized List<FortData> getForts(long cellId) {
+		StoredCell cell = cells.get(cellId);
+		return cell != null ? new ArrayList<>(cell.forts.values()) : new ArrayList<FortData>();
+	}
+
+	/**
+	 * Gets a stored fort
+	 *
+	 * @param fortId the fort id
+	 * @return the fort, or null if it is not stored
+	 */
+	public synchronized FortData getFort(String fortId) {
+		Long cellId = fortCells.get(fortId);
+		return cellId != null ? cells.get(cellId).forts.get(fortId) : null;
+	}
+
+	/**
+	 * Gets the stored details of a fort
+	 *
+	 * @param fortId the fort id
+	 * @return the details, or null if they are not stored
+	 */
+	public synchronized FortDetailsResponse getFortDetails(String fortId) {
+		return fortDetails.get(fortId);
+	}
+
+	/**
+	 * Gets the time the stored details of a fort were fetched
+	 *
+	 * @param fortId the fort id
+	 * @return the time, or 0 if no details are stored
+	 */
+	public synchronized long getFortDetailsTime(String fortId) {
+		Long time = fortDetailsTimes.get(fortId);
+		return time != null ? time : 0;
+	}
+
+	/**
+	 * Gets the stored spawn points of a cell
+	 *
+	 * @param cellId the cell id
+	 * @return the spawn points
+	 */
+	public synchronized List<TimedSpawnPoint> getSpawnPoints(long cellId) {
+		StoredCell cell = cells.get(cellId);
+		return cell != null ? new ArrayList<>(cell.spawnPoints.values()) : new ArrayList<TimedSpawnPoint>();
+	}
+
+	/**
+	 * Gets all stored spawn points
+	 *
+	 * @return the spawn points
+	 */
+	public synchronized List<TimedSpawnPoint> getSpawnPoints() {
+		List<TimedSpawnPoint> spawnPoints = new ArrayList<>();
+		for (StoredCell cell : cells.values()) {
+			spawnPoints.addAll(cell.spawnPoints.values());
+		}
+		return spawnPoints;
+	}
+
+	/**
+	 * Gets the ids of all cells that have stored forts or spawn points
+	 *
+	 * @return the cell ids
+	 */
+	public synchronized Set<Long> getCellIds() {
+		return Collections.unmodifiableSet(new HashSet<>(cells.keySet()));
+	}
+
+	/**
+	 * Rewrites the file with only the current records
+	 *
+	 * @throws IOException if the file cannot be rewritten
+	 */
+	public synchronized void compact() throws IOException {
+		File temporary = getTemporaryFile();
+		DataOutputStream compacted = openOutput(temporary, false);
+		int count;
+		try {
+			count = writeAll(compacted);
+		} finally {
+			compacted.close();
+		}
+		output.close();
+		if (!file.delete()) {
+			temporary.delete();
+			output = openOutput(file, true);
+			throw new IOException("Could not replace " + file + " with " + temporary);
+		}
+		if (!temporary.renameTo(file)) {
+			// never leave a file without header behind, write the records again and keep the temporary file until then
+			output = openOutput(file, false);
+			count = writeAll(output);
+			output.flush();
+			temporary.delete();
+		} else {
+			output = openOutput(file, true);
+		}
+		records = count;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		output.close();
+	}
+
+	private void write(byte type, long cellId, byte[] payload) throws IOException {
+		writeRecord(output, type, cellId, payload);
+		records++;
+	}
+
+	private void finish(boolean written) throws IOException {
+		if (!written) {
+			return;
+		}
+		output.flush();
+		int live = fortCells.size() + fortDetails.size();
+		for (StoredCell cell : cells.values()) {
+			live += cell.spawnPoints.size();
+		}
+		if (records >= COMPACT_MIN_RECORDS && records > live * COMPACT_RATIO) {
+			compact();
+		}
+	}
+
+	private void storeFort(long cellId, FortData fort) {
+		Long previousCell = fortCells.put(fort.getId(), cellId);
+		if (previousCell != null && previousCell != cellId) {
+			cells.get(previousCell).forts.remove(fort.getId());
+		}
+		getCell(cellId).forts.put(fort.getId(), fort);
+	}
+
+	private void storeFortDetails(FortDetailsResponse details, long time) {
+		fortDetails.put(details.getFortId(), details);
+		fortDetailsTimes.put(details.getFortId(), time);
+	}
+
+	private void removeFort(String fortId) {
+		Long cellId = fortCells.remove(fortId);
+		if (cellId != null) {
+			cells.get(cellId).forts.remove(fortId);
+		}
+	}
+
+	private StoredCell getCell(long cellId) {
+		StoredCell cell = cells.get(cellId);
+		if (cell == null) {
+			cell = new StoredCell();
+			cells.put(cellId, cell);
+		}
+		return cell;
+	}
+
+	/**
+	 * Writes the header and the current records
+	 *
+	 * @return the amount of records written
+	 */
+	private int writeAll(DataOutputStream stream) throws IOException {
+		int count = 0;
+		writeHeader(stream);
+		for (java.util.Map.Entry<Long, StoredCell> entry : cells.entrySet()) {
+			for (FortData fort : entry.getValue().forts.values()) {
+				writeRecord(stream, FORT, entry.getKey(), fort.toByteArray());
+				count++;
+			}
+			for (TimedSpawnPoint spawnPoint : entry.getValue().spawnPoints.values()) {
+				writeRecord(stream, SPAWN_POINT, entry.getKey(), writeSpawnPoint(spawnPoint));
+				count++;
+			}
+		}
+		for (FortDetailsResponse details : fortDetails.values()) {
+			writeRecord(stream, FORT_DETAILS, getCellId(details.getLatitude(), details.getLongitude()),
+					writeFortDetails(details, getFortDetailsTime(details.getFortId())));
+			count++;
+		}
+		return count;
+	}
+
+	private File getTemporaryFile() {
+		return new File(file.getPath() + ".tmp");
+	}
+
+	private static DataOutputStream openOutput(File file, boolean append) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append), 1 << 16));
+	}
+
+	private static void writeHeader(DataOutputStream output) throws IOException {
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+	}
+
+	private static void writeRecord(DataOutputStream output, byte type, long cellId, byte[] payload)
+			throws IOException {
+		output.writeByte(type);
+		output.writeLong(cellId);
+		output.writeInt(payload.length);
+		output.write(payload);
+	}
+
+	private static byte[] writeSpawnPoint(TimedSpawnPoint spawnPoint) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeDouble(spawnPoint.getLatitude());
+		output.writeDouble(spawnPoint.getLongitude());
+		output.writeUTF(spawnPoint.getSpawnPointId() != null ? spawnPoint.getSpawnPointId() : "");
+		output.writeLong(spawnPoint.getDespawnOffset());
+		output.writeLong(spawnPoint.getDuration());
+		output.writeLong(spawnPoint.getLastSeen());
+		return bytes.toByteArray();
+	}
+
+	private static byte[] writeFortDetails(FortDetailsResponse details, long time) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeLong(time);
+		details.writeTo(output);
+		return bytes.toByteArray();
+	}
+
+	private static TimedSpawnPoint readSpawnPoint(long cellId, byte[] payload) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+		double latitude = input.readDouble();
+		double longitude = input.readDouble();
+		String spawnPointId = input.readUTF();
+		return new TimedSpawnPoint(cellId, latitude, longitude, spawnPointId.isEmpty() ? null : spawnPointId,
+				input.readLong(), input.readLong(), input.readLong());
+	}
+
+	private static long getKey(TimedSpawnPoint spawnPoint) {
+		return S2CellId.fromLatLng(S2LatLng.fromDegrees(spawnPoint.getLatitude(), spawnPoint.getLongitude())).id();
+	}
+
+	private static long getCellId(double latitude, double longitude) {
+		return S2CellId.fromLatLng(S2LatLng.fromDegrees(latitude, longitude)).parent(15).id();
+	}
+
+	private static class StoredCell {
+		private final LinkedHashMap<String, FortData> forts = new LinkedHashMap<>();
+		private final LinkedHashMap<Long, TimedSpawnPoint> spawnPoints = new LinkedHashMap<>();
+	}
+}
@@ -19,16 +19,16 @@ import POGOProtos.Inventory.Item.ItemIdOuterClass;
 import POGOProtos.Map.Fort.FortDataOuterClass;
 import POGOProtos.Map.Fort.FortModifierOuterClass;
 import POGOProtos.Networking.Requests.Messages.AddFortModifierMessageOuterClass.AddFortModifierMessage;
-import POGOProtos.Networking.Requests.Messages.FortDetailsMessageOuterClass.FortDetailsMessage;
 import POGOProtos.Networking.Requests.Messages.FortSearchMessageOuterClass.FortSearchMessage;
 import POGOProtos.Networking.Requests.RequestTypeOuterClass;
 import POGOProtos.Networking.Responses.AddFortModifierResponseOuterClass;
-import POGOProtos.Networking.Responses.FortDetailsResponseOuterClass;
+import POGOProtos.Networking.Responses.FortDetailsResponseOuterClass.FortDetailsResponse;
 import POGOProtos.Networking.Responses.FortSearchResponseOuterClass;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.pokegoapi.api.PokemonGo;
 import com.pokegoapi.api.listener.PokestopListener;
+import com.pokegoapi.api.map.FortDetailsCache;
 import com.pokegoapi.exceptions.AsyncRemoteServerException;
 import com.pokegoapi.exceptions.LoginFailedException;
 import com.pokegoapi.exceptions.RemoteServerException;
@@ -221,28 +221,16 @@ public class Pokestop {
 	 * @return FortDetails
 	 */
 	public Observable<FortDetails> getDetailsAsync() {
-		FortDetailsMessage reqMsg = FortDetailsMessage.newBuilder()
-				.setFortId(getId())
-				.setLatitude(getLatitude())
-				.setLongitude(getLongitude())
-				.build();
-
-		AsyncServerRequest serverRequest = new AsyncServerRequest(RequestTypeOuterClass.RequestType.FORT_DETAILS, reqMsg);
-		return api.getRequestHandler().sendAsyncServerRequests(serverRequest).map(new Func1<ByteString, FortDetails>() {
-			@Override
-			public FortDetails call(ByteString result) {
-				FortDetailsResponseOuterClass.FortDetailsResponse response = null;
-				try {
-					response = FortDetailsResponseOuterClass.FortDetailsResponse.parseFrom(result);
-				} catch (InvalidProtocolBufferException e) {
-					throw new AsyncRemoteServerException(e);
-				}
-				return new FortDetails(response);
-			}
-		});
+		return api.getMap().getFortDetailsCache()
+				.getFortDetailsAsync(getId(), getLatitude(), getLongitude(), FortDetailsCache.Field.LURE)
+				.map(new Func1<FortDetailsResponse, FortDetails>() {
+					@Override
+					public FortDetails call(FortDetailsResponse response) {
+						return new FortDetails(response);
+					}
+				});
 	}
 
-
 	/**
 	 * Get more detailed information about a pokestop.
 	 *
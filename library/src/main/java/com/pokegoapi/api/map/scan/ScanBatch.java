@@ -13,28 +13,26 @@
  *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-package com.pokegoapi.main;
-
-import com.google.protobuf.ByteString;
+package com.pokegoapi.api.map.scan;
 
+import com.pokegoapi.google.common.geometry.S2LatLng;
 import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
 
-public class ResultOrException {
+/**
+ * Cells that are requested together with a single GET_MAP_OBJECTS, from the location at their center.
+ */
+@ToString
+public class ScanBatch {
 	@Getter
-	private final ByteString result;
+	private final List<Long> cellIds;
 	@Getter
-	private final Exception exception;
-
-	private ResultOrException(ByteString result, Exception exception) {
-		this.result = result;
-		this.exception = exception;
-	}
-
-	public static ResultOrException getError(Exception exception) {
-		return new ResultOrException(null, exception);
-	}
+	private final S2LatLng center;
 
-	public static ResultOrException getResult(ByteString result) {
-		return new ResultOrException(result, null);
+	ScanBatch(List<Long> cellIds, S2LatLng center) {
+		this.cellIds = cellIds;
+		this.center = center;
 	}
 }
@@ -0,0 +1,301 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.api.map.scan;
+
+import com.pokegoapi.api.PokemonGo;
+import com.pokegoapi.api.map.MapObjects;
+import com.pokegoapi.google.common.geometry.S2CellId;
+import com.pokegoapi.google.common.geometry.S2LatLng;
+import com.pokegoapi.google.common.geometry.S2Point;
+import com.pokegoapi.google.common.geometry.S2Region;
+import com.pokegoapi.google.common.geometry.S2RegionCoverer;
+import com.pokegoapi.util.MapUtil;
+import lombok.Getter;
+import rx.Observable;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Plans scans of an area, like a {@link com.pokegoapi.google.common.geometry.S2Cap},
+ * {@link com.pokegoapi.google.common.geometry.S2LatLngRect}, {@link ScanPolygon} or the cells along a
+ * {@link com.pokegoapi.google.common.geometry.S2Polyline}. The area is covered with level 15 cells, which are
+ * requested in batches of nearby cells without requesting any cell twice, and the batches are visited in a short
+ * order.
+ */
+public class ScanPlanner {
+	public static final int CELL_LEVEL = 15;
+	// the official client requests 21 cells around the player
+	public static final int DEFAULT_BATCH_SIZE = 21;
+	public static final double DEFAULT_BATCH_RADIUS = 800;
+	// the visiting order is only optimized below this amount of batches, it takes quadratic time
+	private static final int MAX_OPTIMIZED_BATCHES = 500;
+
+	private final PokemonGo api;
+	@Getter
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	@Getter
+	private double batchRadius = DEFAULT_BATCH_RADIUS;
+
+	/**
+	 * Creates a scan planner
+	 *
+	 * @param api the api to scan with
+	 */
+	public ScanPlanner(PokemonGo api) {
+		this.api = api;
+	}
+
+	/**
+	 * Sets how many cells are requested at once at most
+	 *
+	 * @param batchSize the maximum amount of cells per request
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("A batch needs at least one cell");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sets how far the center of a requested cell may be from the location it is requested from
+	 *
+	 * @param batchRadius the radius in meters
+	 */
+	public void setBatchRadius(double batchRadius) {
+		if (batchRadius <= 0) {
+			throw new IllegalArgumentException("Batch radius must be positive");
+		}
+		this.batchRadius = batchRadius;
+	}
+
+	/**
+	 * Covers the given region with level 15 cells
+	 *
+	 * @param region the region
+	 * @return the cells in hilbert curve order, so consecutive cells lie close to each other
+	 */
+	public List<S2CellId> getCovering(S2Region region) {
+		S2RegionCoverer coverer = new S2RegionCoverer();
+		coverer.setMinLevel(CELL_LEVEL);
+		coverer.setMaxLevel(CELL_LEVEL);
+		coverer.setMaxCells(Integer.MAX_VALUE);
+		ArrayList<S2CellId> covering = new ArrayList<>();
+		coverer.getCovering(region, covering);
+		Collections.sort(covering);
+		return covering;
+	}
+
+	/**
+	 * Plans the scan of a region, starting at the current location
+	 *
+	 * @param region the region to scan
+	 * @return the batches in visiting order
+	 */
+	public List<ScanBatch> plan(S2Region region) {
+		return plan(region, getLocation());
+	}
+
+	/**
+	 * Plans the scan of the given level 15 cells, starting at the current location
+	 *
+	 * @param cells the cells to scan
+	 * @return the batches in visiting order
+	 */
+	public List<ScanBatch> plan(List<S2CellId> cells) {
+		return plan(cells, getLocation());
+	}
+
+	/**
+	 * Plans the scan of a region
+	 *
+	 * @param region the region to scan
+	 * @param start where the scan starts, or null to start at either end
+	 * @return the batches in visiting order
+	 */
+	public List<ScanBatch> plan(S2Region region, S2LatLng start) {
+		return plan(getCovering(region), start);
+	}
+
+	/**
+	 * Plans the scan of the given level 15 cells
+	 *
+	 * @param cells the cells to scan
+	 * @param start where the scan starts, or null to start at either end
+	 * @return the batches in visiting order
+	 */
+	public List<ScanBatch> plan(List<S2CellId> cells, S2LatLng start) {
+		List<S2CellId> sorted = new ArrayList<>(cells);
+		Collections.sort(sorted);
+		List<ScanBatch> batches = new ArrayList<>();
+		List<S2CellId> batch = new ArrayList<>();
+		for (S2CellId cellId : sorted) {
+			batch.add(cellId);
+			if (batch.size() > batchSize || getRadius(batch) > batchRadius) {
+				batch.remove(batch.size() - 1);
+				batches.add(toBatch(batch));
+				batch = new ArrayList<>();
+				batch.add(cellId);
+			}
+		}
+		if (!batch.isEmpty()) {
+			batches.add(toBatch(batch));
+		}
+
+		if (start != null && batches.size() > 1
+				&& distance(start, batches.get(batches.size() - 1).getCenter())
+				< distance(start, batches.get(0).getCenter())) {
+			Collections.reverse(batches);
+		}
+		if (batches.size() <= MAX_OPTIMIZED_BATCHES) {
+			optimize(batches, start);
+		}
+		return batches;
+	}
+
+	/**
+	 * Scans a region, moving to each batch in turn
+	 *
+	 * @param region the region to scan
+	 * @return the map objects of each batch, in visiting order
+	 */
+	public Observable<MapObjects> scan(S2Region region) {
+		return scan(plan(region));
+	}
+
+	/**
+	 * Scans the given batches in order, moving to the center of each before requesting it. Set a rate limit for
+	 * GET_MAP_OBJECTS on the request handler to space the requests out.
+	 *
+	 * @param batches the batches to scan
+	 * @return the map objects of each batch, in visiting order
+	 */
+	public Observable<MapObjects> scan(List<ScanBatch> batches) {
+		return Observable.from(batches).concatMap(new Func1<ScanBatch, Observable<MapObjects>>() {
+			@Override
+			public Observable<MapObjects> call(final ScanBatch batch) {
+				return Observable.defer(new Func0<Observable<MapObjects>>() {
+					@Override
+					public Observable<MapObjects> call() {
+						S2LatLng center = batch.getCenter();
+						api.setLocation(center.latDegrees(), center.lngDegrees(), api.getAltitude());
+						return api.getMap().getMapObjectsAsync(batch.getCellIds());
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Improves the visiting order by reversing parts of it while that shortens the path (2-opt). The first batch is
+	 * kept in place when there is no start location.
+	 */
+	private void optimize(List<ScanBatch> batches, S2LatLng start) {
+		List<S2LatLng> points = new ArrayList<>();
+		if (start != null) {
+			points.add(start);
+		}
+		for (ScanBatch batch : batches) {
+			points.add(batch.getCenter());
+		}
+		int count = points.size();
+		if (count < 4) {
+			return;
+		}
+		double[][] distances = new double[count][count];
+		for (int i = 0; i < count; i++) {
+			for (int j = i + 1; j < count; j++) {
+				distances[i][j] = distance(points.get(i), points.get(j));
+				distances[j][i] = distances[i][j];
+			}
+		}
+		int[] order = new int[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+		}
+
+		boolean improved = true;
+		while (improved) {
+			improved = false;
+			for (int i = 1; i < count - 1; i++) {
+				for (int j = i + 1; j < count; j++) {
+					double before = distances[order[i - 1]][order[i]];
+					double after = distances[order[i - 1]][order[j]];
+					if (j + 1 < count) {
+						before += distances[order[j]][order[j + 1]];
+						after += distances[order[i]][order[j + 1]];
+					}
+					if (after < before - 1e-6) {
+						for (int low = i, high = j; low < high; low++, high--) {
+							int swap = order[low];
+							order[low] = order[high];
+							order[high] = swap;
+						}
+						improved = true;
+					}
+				}
+			}
+		}
+
+		int offset = start != null ? 1 : 0;
+		List<ScanBatch> ordered = new ArrayList<>(batches.size());
+		for (int i = offset; i < count; i++) {
+			ordered.add(batches.get(order[i] - offset));
+		}
+		batches.clear();
+		batches.addAll(ordered);
+	}
+
+	private S2LatLng getLocation() {
+		if (Double.isNaN(api.getLatitude()) || Double.isNaN(api.getLongitude())) {
+			return null;
+		}
+		return S2LatLng.fromDegrees(api.getLatitude(), api.getLongitude());
+	}
+
+	private ScanBatch toBatch(List<S2CellId> cells) {
+		List<Long> cellIds = new ArrayList<>(cells.size());
+		for (S2CellId cell : cells) {
+			cellIds.add(cell.id());
+		}
+		return new ScanBatch(Collections.unmodifiableList(cellIds), new S2LatLng(getCenter(cells)));
+	}
+
+	private double getRadius(List<S2CellId> cells) {
+		S2LatLng center = new S2LatLng(getCenter(cells));
+		double radius = 0;
+		for (S2CellId cell : cells) {
+			radius = Math.max(radius, distance(center, new S2LatLng(cell.toPoint())));
+		}
+		return radius;
+	}
+
+	private S2Point getCenter(List<S2CellId> cells) {
+		S2Point sum = new S2Point(0, 0, 0);
+		for (S2CellId cell : cells) {
+			sum = S2Point.add(sum, cell.toPoint());
+		}
+		return S2Point.normalize(sum);
+	}
+
+	private static double distance(S2LatLng first, S2LatLng second) {
+		return MapUtil.distFrom(first.latDegrees(), first.lngDegrees(), second.latDegrees(), second.lngDegrees());
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.api.map.scan;
+
+import com.pokegoapi.google.common.geometry.S2Cap;
+import com.pokegoapi.google.common.geometry.S2Cell;
+import com.pokegoapi.google.common.geometry.S2LatLng;
+import com.pokegoapi.google.common.geometry.S2LatLngRect;
+import com.pokegoapi.google.common.geometry.S2Region;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A simple polygon to scan, since the bundled S2 library has no polygons. Its edges are straight lines in
+ * latitude/longitude, which is close enough at city scale, and it must not cross the antimeridian.
+ */
+public class ScanPolygon implements S2Region {
+	private final List<S2LatLng> vertices;
+	private final S2LatLngRect bound;
+
+	/**
+	 * Creates a polygon from its vertices, the last vertex is connected to the first one
+	 *
+	 * @param vertices the vertices, at least 3
+	 */
+	public ScanPolygon(List<S2LatLng> vertices) {
+		if (vertices.size() < 3) {
+			throw new IllegalArgumentException("A polygon needs at least 3 vertices");
+		}
+		this.vertices = Collections.unmodifiableList(new ArrayList<>(vertices));
+		S2LatLngRect rect = S2LatLngRect.empty();
+		for (S2LatLng vertex : vertices) {
+			rect = rect.addPoint(vertex);
+		}
+		this.bound = rect;
+	}
+
+	public List<S2LatLng> getVertices() {
+		return vertices;
+	}
+
+	@Override
+	public S2Cap getCapBound() {
+		return bound.getCapBound();
+	}
+
+	@Override
+	public S2LatLngRect getRectBound() {
+		return bound;
+	}
+
+	/**
+	 * Checks whether the given location lies inside this polygon
+	 *
+	 * @param latLng the location
+	 * @return true if the location is inside
+	 */
+	public boolean contains(S2LatLng latLng) {
+		double latitude = latLng.latDegrees();
+		double longitude = latLng.lngDegrees();
+		boolean inside = false;
+		for (int i = 0, j = vertices.size() - 1; i < vertices.size(); j = i++) {
+			S2LatLng first = vertices.get(i);
+			S2LatLng second = vertices.get(j);
+			if ((first.latDegrees() > latitude) != (second.latDegrees() > latitude)) {
+				double crossing = first.lngDegrees() + (latitude - first.latDegrees())
+						* (second.lngDegrees() - first.lngDegrees()) / (second.latDegrees() - first.latDegrees());
+				if (longitude < crossing) {
+					inside = !inside;
+				}
+			}
+		}
+		return inside;
+	}
+
+	@Override
+	public boolean contains(S2Cell cell) {
+		S2LatLng[] corners = getCorners(cell);
+		for (S2LatLng corner : corners) {
+			if (!contains(corner)) {
+				return false;
+			}
+		}
+		return !crossesEdges(corners);
+	}
+
+	@Override
+	public boolean mayIntersect(S2Cell cell) {
+		if (!bound.intersects(cell)) {
+			return false;
+		}
+		S2LatLng[] corners = getCorners(cell);
+		for (S2LatLng corner : corners) {
+			if (contains(corner)) {
+				return true;
+			}
+		}
+		for (S2LatLng vertex : vertices) {
+			if (cell.contains(vertex.toPoint())) {
+				return true;
+			}
+		}
+		return crossesEdges(corners);
+	}
+
+	private S2LatLng[] getCorners(S2Cell cell) {
+		S2LatLng[] corners = new S2LatLng[4];
+		for (int i = 0; i < 4; i++) {
+			corners[i] = new S2LatLng(cell.getVertex(i));
+		}
+		return corners;
+	}
+
+	private boolean crossesEdges(S2LatLng[] corners) {
+		for (int i = 0, j = vertices.size() - 1; i < vertices.size(); j = i++) {
+			for (int k = 0; k < corners.length; k++) {
+				if (intersects(vertices.get(j), vertices.get(i), corners[k], corners[(k + 1) % corners.length])) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean intersects(S2LatLng first, S2LatLng second, S2LatLng third, S2LatLng fourth) {
+		double d1 = orientation(third, fourth, first);
+		double d2 = orientation(third, fourth, second);
+		double d3 = orientation(first, second, third);
+		double d4 = orientation(first, second, fourth);
+		return ((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0));
+	}
+
+	private static double orientation(S2LatLng origin, S2LatLng first, S2LatLng second) {
+		return (first.lngDegrees() - origin.lngDegrees()) * (second.latDegrees() - origin.latDegrees())
+				- (first.latDegrees() - origin.latDegrees()) * (second.lngDegrees() - origin.lngDegrees());
+	}
+}
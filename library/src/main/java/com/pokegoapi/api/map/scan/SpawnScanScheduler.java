@@ -0,0 +1,118 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.api.map.scan;
+
+import com.pokegoapi.api.PokemonGo;
+import com.pokegoapi.api.map.MapObjects;
+import com.pokegoapi.api.map.SpawnTimeline;
+import com.pokegoapi.google.common.geometry.S2CellId;
+import com.pokegoapi.google.common.geometry.S2Region;
+import lombok.Getter;
+import rx.Observable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Rescans an area by only requesting the cells with a spawn that is due, using what the {@link SpawnTimeline} of
+ * the map learned from earlier scans. The first scan requests every cell, after that a cell is only requested again
+ * when a pokemon appeared in it since it was last scanned, instead of rescanning the whole area periodically.
+ */
+public class SpawnScanScheduler {
+	private final PokemonGo api;
+	@Getter
+	private final ScanPlanner planner;
+	private final S2Region region;
+	private final List<S2CellId> covering;
+	private final List<Long> coveringIds;
+
+	/**
+	 * Creates a scheduler for the given area
+	 *
+	 * @param api the api to scan with
+	 * @param planner the planner that batches the due cells
+	 * @param region the area to keep scanned
+	 */
+	public SpawnScanScheduler(PokemonGo api, ScanPlanner planner, S2Region region) {
+		this.api = api;
+		this.planner = planner;
+		this.region = region;
+		this.covering = Collections.unmodifiableList(planner.getCovering(region));
+		List<Long> ids = new ArrayList<>(covering.size());
+		for (S2CellId cell : covering) {
+			ids.add(cell.id());
+		}
+		this.coveringIds = Collections.unmodifiableList(ids);
+	}
+
+	/**
+	 * Gets the cells of the area that are due
+	 *
+	 * @return the due cells
+	 */
+	public List<S2CellId> getDueCells() {
+		SpawnTimeline timeline = api.getMap().getSpawnTimeline();
+		long now = api.currentTimeMillis();
+		List<S2CellId> due = new ArrayList<>();
+		for (S2CellId cell : covering) {
+			if (timeline.isDue(cell.id(), now)) {
+				due.add(cell);
+			}
+		}
+		return due;
+	}
+
+	/**
+	 * Gets when the next scan is needed, to wait for before calling {@link #scanDue()} again
+	 *
+	 * @return the current time if cells are due already, {@link Long#MAX_VALUE} if the area holds no spawn points
+	 */
+	public long getNextScanTime() {
+		return api.getMap().getSpawnTimeline().getNextDueTime(coveringIds, api.currentTimeMillis());
+	}
+
+	/**
+	 * Plans the scan of the due cells, starting at the current location
+	 *
+	 * @return the batches in visiting order, empty if nothing is due
+	 */
+	public List<ScanBatch> planDue() {
+		List<S2CellId> due = getDueCells();
+		if (due.isEmpty()) {
+			return new ArrayList<>();
+		}
+		return planner.plan(due);
+	}
+
+	/**
+	 * Scans the due cells
+	 *
+	 * @return the map objects of each batch, in visiting order
+	 */
+	public Observable<MapObjects> scanDue() {
+		return planner.scan(planDue());
+	}
+
+	/**
+	 * Scans the whole area, to find spawn points that were added to it
+	 *
+	 * @return the map objects of each batch, in visiting order
+	 */
+	public Observable<MapObjects> scanAll() {
+		return planner.scan(region);
+	}
+}
@@ -18,6 +18,7 @@ package com.pokegoapi.api.pokemon;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.pokegoapi.api.PokemonGo;
+import com.pokegoapi.api.inventory.Inventories;
 import com.pokegoapi.api.inventory.Item;
 import com.pokegoapi.api.map.pokemon.EvolutionResult;
 import com.pokegoapi.api.player.PlayerProfile;
@@ -73,6 +74,20 @@ public class Pokemon extends PokemonDetails {
 		this.stamina = proto.getStamina();
 	}
 
+	/**
+	 * Replaces the data of this pokemon and recomputes its query columns in the pokebank
+	 *
+	 * @param proto the new data
+	 */
+	@Override
+	public void setProto(PokemonData proto) {
+		super.setProto(proto);
+		Inventories inventories = api.getInventories();
+		if (inventories != null) {
+			inventories.getPokebank().refreshPokemon(this);
+		}
+	}
+
 	/**
 	 * Transfers the pokemon.
 	 *
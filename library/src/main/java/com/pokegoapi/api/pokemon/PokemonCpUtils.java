@@ -17,9 +17,6 @@ package com.pokegoapi.api.pokemon;
 
 import com.pokegoapi.exceptions.NoSuchItemException;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import POGOProtos.Enums.PokemonIdOuterClass;
 
 /**
@@ -27,104 +24,128 @@ import POGOProtos.Enums.PokemonIdOuterClass;
  * http://pokemongo.gamepress.gg/cp-multiplier
  * and
  * http://pokemongo.gamepress.gg/pokemon-stats-advanced
+ *
+ * <p>Levels are stored in primitive tables indexed by half level, index 0 being level 1 and index 78 level 40.
+ * The bulk methods compute values for many pokemon at once with plain array loops.
  */
 public class PokemonCpUtils {
-	private static final Map<Float, Float> LEVEL_CP_MULTIPLIER = new HashMap<>();
+	private static final float MIN_LEVEL = 1;
+	private static final float MAX_LEVEL = 40;
+	private static final float[] CP_MULTIPLIER = {
+			0.094f, 0.135137432f, // level 1
+			0.16639787f, 0.192650919f, // level 2
+			0.21573247f, 0.236572661f, // level 3
+			0.25572005f, 0.273530381f, // level 4
+			0.29024988f, 0.306057377f, // level 5
+			0.3210876f, 0.335445036f, // level 6
+			0.34921268f, 0.362457751f, // level 7
+			0.37523559f, 0.387592406f, // level 8
+			0.39956728f, 0.411193551f, // level 9
+			0.42250001f, 0.432926419f, // level 10
+			0.44310755f, 0.453059958f, // level 11
+			0.46279839f, 0.472336083f, // level 12
+			0.48168495f, 0.4908558f, // level 13
+			0.49985844f, 0.508701765f, // level 14
+			0.51739395f, 0.525942511f, // level 15
+			0.53435433f, 0.542635767f, // level 16
+			0.55079269f, 0.558830576f, // level 17
+			0.56675452f, 0.574569153f, // level 18
+			0.58227891f, 0.589887917f, // level 19
+			0.59740001f, 0.604818814f, // level 20
+			0.61215729f, 0.619399365f, // level 21
+			0.62656713f, 0.633644533f, // level 22
+			0.64065295f, 0.647576426f, // level 23
+			0.65443563f, 0.661214806f, // level 24
+			0.667934f, 0.674577537f, // level 25
+			0.68116492f, 0.687680648f, // level 26
+			0.69414365f, 0.700538673f, // level 27
+			0.70688421f, 0.713164996f, // level 28
+			0.71939909f, 0.725571552f, // level 29
+			0.7317f, 0.734741009f, // level 30
+			0.73776948f, 0.740785574f, // level 31
+			0.74378943f, 0.746781211f, // level 32
+			0.74976104f, 0.752729087f, // level 33
+			0.75568551f, 0.758630378f, // level 34
+			0.76156384f, 0.764486065f, // level 35
+			0.76739717f, 0.770297266f, // level 36
+			0.7731865f, 0.776064962f, // level 37
+			0.77893275f, 0.781790055f, // level 38
+			0.78463697f, 0.787473578f, // level 39
+			0.79030001f // level 40
+	};
+	private static final int MAX_INDEX = CP_MULTIPLIER.length - 1;
+	private static final double[] CP_MULTIPLIER_SQUARED = new double[CP_MULTIPLIER.length];
+	// the factor used to estimate the CP gained by a power up from each level, see getCpAfterPowerup
+	private static final double[] POWERUP_CP_FACTOR = new double[CP_MULTIPLIER.length];
+	// power up costs per tier, a tier spans 2 levels or 4 power ups for stardust and 10 levels or 20 power ups for
+	// candy, whichever is higher
+	private static final int[] STARDUST_COSTS = {
+			200, 400, 600, 800, 1000, 1300, 1600, 1900, 2200, 2500,
+			3000, 3500, 4000, 4500, 5000, 6000, 7000, 8000, 9000, 10000
+	};
+	private static final int[] CANDY_COSTS = {1, 2, 3, 4};
+	// square roots of all stat values a pokemon can have
+	private static final double[] SQRT = new double[1024];
 
 	static {
-		LEVEL_CP_MULTIPLIER.put(1f, 0.094f);
-		LEVEL_CP_MULTIPLIER.put(1.5f, 0.135137432f);
-		LEVEL_CP_MULTIPLIER.put(2f, 0.16639787f);
-		LEVEL_CP_MULTIPLIER.put(2.5f, 0.192650919f);
-		LEVEL_CP_MULTIPLIER.put(3f, 0.21573247f);
-		LEVEL_CP_MULTIPLIER.put(3.5f, 0.236572661f);
-		LEVEL_CP_MULTIPLIER.put(4f, 0.25572005f);
-		LEVEL_CP_MULTIPLIER.put(4.5f, 0.273530381f);
-		LEVEL_CP_MULTIPLIER.put(5f, 0.29024988f);
-		LEVEL_CP_MULTIPLIER.put(5.5f, 0.306057377f);
-		LEVEL_CP_MULTIPLIER.put(6f, 0.3210876f);
-		LEVEL_CP_MULTIPLIER.put(6.5f, 0.335445036f);
-		LEVEL_CP_MULTIPLIER.put(7f, 0.34921268f);
-		LEVEL_CP_MULTIPLIER.put(7.5f, 0.362457751f);
-		LEVEL_CP_MULTIPLIER.put(8f, 0.37523559f);
-		LEVEL_CP_MULTIPLIER.put(8.5f, 0.387592406f);
-		LEVEL_CP_MULTIPLIER.put(9f, 0.39956728f);
-		LEVEL_CP_MULTIPLIER.put(9.5f, 0.411193551f);
-		LEVEL_CP_MULTIPLIER.put(10f, 0.42250001f);
-		LEVEL_CP_MULTIPLIER.put(10.5f, 0.432926419f);
-		LEVEL_CP_MULTIPLIER.put(11f, 0.44310755f);
-		LEVEL_CP_MULTIPLIER.put(11.5f, 0.453059958f);
-		LEVEL_CP_MULTIPLIER.put(12f, 0.46279839f);
-		LEVEL_CP_MULTIPLIER.put(12.5f, 0.472336083f);
-		LEVEL_CP_MULTIPLIER.put(13f, 0.48168495f);
-		LEVEL_CP_MULTIPLIER.put(13.5f, 0.4908558f);
-		LEVEL_CP_MULTIPLIER.put(14f, 0.49985844f);
-		LEVEL_CP_MULTIPLIER.put(14.5f, 0.508701765f);
-		LEVEL_CP_MULTIPLIER.put(15f, 0.51739395f);
-		LEVEL_CP_MULTIPLIER.put(15.5f, 0.525942511f);
-		LEVEL_CP_MULTIPLIER.put(16f, 0.53435433f);
-		LEVEL_CP_MULTIPLIER.put(16.5f, 0.542635767f);
-		LEVEL_CP_MULTIPLIER.put(17f, 0.55079269f);
-		LEVEL_CP_MULTIPLIER.put(17.5f, 0.558830576f);
-		LEVEL_CP_MULTIPLIER.put(18f, 0.56675452f);
-		LEVEL_CP_MULTIPLIER.put(18.5f, 0.574569153f);
-		LEVEL_CP_MULTIPLIER.put(19f, 0.58227891f);
-		LEVEL_CP_MULTIPLIER.put(19.5f, 0.589887917f);
-		LEVEL_CP_MULTIPLIER.put(20f, 0.59740001f);
-		LEVEL_CP_MULTIPLIER.put(20.5f, 0.604818814f);
-		LEVEL_CP_MULTIPLIER.put(21f, 0.61215729f);
-		LEVEL_CP_MULTIPLIER.put(21.5f, 0.619399365f);
-		LEVEL_CP_MULTIPLIER.put(22f, 0.62656713f);
-		LEVEL_CP_MULTIPLIER.put(22.5f, 0.633644533f);
-		LEVEL_CP_MULTIPLIER.put(23f, 0.64065295f);
-		LEVEL_CP_MULTIPLIER.put(23.5f, 0.647576426f);
-		LEVEL_CP_MULTIPLIER.put(24f, 0.65443563f);
-		LEVEL_CP_MULTIPLIER.put(24.5f, 0.661214806f);
-		LEVEL_CP_MULTIPLIER.put(25f, 0.667934f);
-		LEVEL_CP_MULTIPLIER.put(25.5f, 0.674577537f);
-		LEVEL_CP_MULTIPLIER.put(26f, 0.68116492f);
-		LEVEL_CP_MULTIPLIER.put(26.5f, 0.687680648f);
-		LEVEL_CP_MULTIPLIER.put(27f, 0.69414365f);
-		LEVEL_CP_MULTIPLIER.put(27.5f, 0.700538673f);
-		LEVEL_CP_MULTIPLIER.put(28f, 0.70688421f);
-		LEVEL_CP_MULTIPLIER.put(28.5f, 0.713164996f);
-		LEVEL_CP_MULTIPLIER.put(29f, 0.71939909f);
-		LEVEL_CP_MULTIPLIER.put(29.5f, 0.725571552f);
-		LEVEL_CP_MULTIPLIER.put(30f, 0.7317f);
-		LEVEL_CP_MULTIPLIER.put(30.5f, 0.734741009f);
-		LEVEL_CP_MULTIPLIER.put(31f, 0.73776948f);
-		LEVEL_CP_MULTIPLIER.put(31.5f, 0.740785574f);
-		LEVEL_CP_MULTIPLIER.put(32f, 0.74378943f);
-		LEVEL_CP_MULTIPLIER.put(32.5f, 0.746781211f);
-		LEVEL_CP_MULTIPLIER.put(33f, 0.74976104f);
-		LEVEL_CP_MULTIPLIER.put(33.5f, 0.752729087f);
-		LEVEL_CP_MULTIPLIER.put(34f, 0.75568551f);
-		LEVEL_CP_MULTIPLIER.put(34.5f, 0.758630378f);
-		LEVEL_CP_MULTIPLIER.put(35f, 0.76156384f);
-		LEVEL_CP_MULTIPLIER.put(35.5f, 0.764486065f);
-		LEVEL_CP_MULTIPLIER.put(36f, 0.76739717f);
-		LEVEL_CP_MULTIPLIER.put(36.5f, 0.770297266f);
-		LEVEL_CP_MULTIPLIER.put(37f, 0.7731865f);
-		LEVEL_CP_MULTIPLIER.put(37.5f, 0.776064962f);
-		LEVEL_CP_MULTIPLIER.put(38f, 0.77893275f);
-		LEVEL_CP_MULTIPLIER.put(38.5f, 0.781790055f);
-		LEVEL_CP_MULTIPLIER.put(39f, 0.78463697f);
-		LEVEL_CP_MULTIPLIER.put(39.5f, 0.787473578f);
-		LEVEL_CP_MULTIPLIER.put(40f, 0.79030001f);
+		for (int index = 0; index <= MAX_INDEX; index++) {
+			CP_MULTIPLIER_SQUARED[index] = (double) CP_MULTIPLIER[index] * CP_MULTIPLIER[index];
+			// Based on http://pokemongo.gamepress.gg/power-up-costs
+			float level = getLevel(index);
+			if (level <= 10) {
+				POWERUP_CP_FACTOR[index] = 0.009426125469;
+			} else if (level <= 20) {
+				POWERUP_CP_FACTOR[index] = 0.008919025675;
+			} else if (level <= 30) {
+				POWERUP_CP_FACTOR[index] = 0.008924905903;
+			} else {
+				POWERUP_CP_FACTOR[index] = 0.00445946079;
+			}
+		}
+		for (int value = 0; value < SQRT.length; value++) {
+			SQRT[value] = Math.sqrt(value);
+		}
 	}
 
-	private static float getLevel(float combinedCpMultiplier) {
-		float level;
-		if (combinedCpMultiplier < 0.734f) {
-			// compute polynomial approximation obtained by regression
-			level = 58.35178527f * combinedCpMultiplier * combinedCpMultiplier
-					- 2.838007664f * combinedCpMultiplier + 0.8539209906f;
-		} else {
-			// compute linear approximation obtained by regression
-			level = 171.0112688f * combinedCpMultiplier - 95.20425243f;
+	/**
+	 * Finds the half level index whose cp multiplier is the closest to the given one
+	 *
+	 * @param combinedCpMultiplier All CP multiplier values combined
+	 * @return the half level index
+	 */
+	private static int getIndex(float combinedCpMultiplier) {
+		int low = 0;
+		int high = MAX_INDEX;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (CP_MULTIPLIER[middle] < combinedCpMultiplier) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
 		}
-		// round to nearest .5 value and return
-		return Math.round((level) * 2) / 2.0f;
+		if (low > 0 && combinedCpMultiplier - CP_MULTIPLIER[low - 1] < CP_MULTIPLIER[low] - combinedCpMultiplier) {
+			return low - 1;
+		}
+		return low;
+	}
+
+	/**
+	 * Gets the half level index of a level, clamped to the known levels
+	 *
+	 * @param level the level
+	 * @return the half level index
+	 */
+	private static int getIndexOfLevel(float level) {
+		return (int) Math.max(0, Math.min(MAX_INDEX, (level - MIN_LEVEL) * 2));
+	}
+
+	private static float getLevel(int index) {
+		return MIN_LEVEL + index / 2f;
+	}
+
+	private static double sqrt(int value) {
+		return value >= 0 && value < SQRT.length ? SQRT[value] : Math.sqrt(value);
 	}
 
 	/**
@@ -134,7 +155,7 @@ public class PokemonCpUtils {
 	 * @return Level
 	 */
 	public static float getLevelFromCpMultiplier(float combinedCpMultiplier) {
-		return getLevel(combinedCpMultiplier);
+		return getLevel(getIndex(combinedCpMultiplier));
 	}
 
 	/**
@@ -146,7 +167,7 @@ public class PokemonCpUtils {
 	 * @return Maximum CP for these levels
 	 */
 	public static int getMaxCp(int attack, int defense, int stamina) {
-		return getMaxCpForPlayer(attack, defense, stamina, 40);
+		return getMaxCpForPlayer(attack, defense, stamina, (int) MAX_LEVEL);
 	}
 
 	/**
@@ -164,7 +185,7 @@ public class PokemonCpUtils {
 		int attack = 15 + pokemonMeta.getBaseAttack();
 		int defense = 15 + pokemonMeta.getBaseDefense();
 		int stamina = 15 + pokemonMeta.getBaseStamina();
-		return getMaxCpForPlayer(attack, defense, stamina, 40);
+		return getMaxCpForPlayer(attack, defense, stamina, (int) MAX_LEVEL);
 	}
 
 	/**
@@ -177,9 +198,25 @@ public class PokemonCpUtils {
 	 * @return Maximum CP for these levels
 	 */
 	public static int getMaxCpForPlayer(int attack, int defense, int stamina, int playerLevel) {
-		float maxLevel = Math.min(playerLevel + 1.5f, 40f);
-		float maxCpMultplier = LEVEL_CP_MULTIPLIER.get(maxLevel);
-		return getCp(attack, defense, stamina, maxCpMultplier);
+		return getCp(attack, defense, stamina, CP_MULTIPLIER_SQUARED[getIndexOfLevel(playerLevel + 1.5f)]);
+	}
+
+	/**
+	 * Get the maximum CP for many pokemon at once
+	 *
+	 * @param attack      All attack values combined, per pokemon
+	 * @param defense     All defense values combined, per pokemon
+	 * @param stamina     All stamina values combined, per pokemon
+	 * @param playerLevel The player level
+	 * @return Maximum CP for these levels, per pokemon
+	 */
+	public static int[] getMaxCpForPlayer(int[] attack, int[] defense, int[] stamina, int playerLevel) {
+		double multiplierSquared = CP_MULTIPLIER_SQUARED[getIndexOfLevel(playerLevel + 1.5f)];
+		int[] cp = new int[attack.length];
+		for (int index = 0; index < cp.length; index++) {
+			cp[index] = getCp(attack[index], defense[index], stamina[index], multiplierSquared);
+		}
+		return cp;
 	}
 
 	/**
@@ -192,8 +229,29 @@ public class PokemonCpUtils {
 	 * @return CP
 	 */
 	public static int getCp(int attack, int defense, int stamina, float combinedCpMultiplier) {
-		return (int) Math.round(attack * Math.pow(defense, 0.5) * Math.pow(stamina, 0.5)
-				* Math.pow(combinedCpMultiplier, 2) / 10f);
+		return getCp(attack, defense, stamina, (double) combinedCpMultiplier * combinedCpMultiplier);
+	}
+
+	/**
+	 * Calculate CP for many pokemon at once
+	 *
+	 * @param attack               All attack values combined, per pokemon
+	 * @param defense              All defense values combined, per pokemon
+	 * @param stamina              All stamina values combined, per pokemon
+	 * @param combinedCpMultiplier All CP multiplier values combined, per pokemon
+	 * @return CP, per pokemon
+	 */
+	public static int[] getCp(int[] attack, int[] defense, int[] stamina, float[] combinedCpMultiplier) {
+		int[] cp = new int[attack.length];
+		for (int index = 0; index < cp.length; index++) {
+			double multiplier = combinedCpMultiplier[index];
+			cp[index] = getCp(attack[index], defense[index], stamina[index], multiplier * multiplier);
+		}
+		return cp;
+	}
+
+	private static int getCp(int attack, int defense, int stamina, double multiplierSquared) {
+		return (int) Math.round(attack * sqrt(defense) * sqrt(stamina) * multiplierSquared / 10f);
 	}
 
 	/**
@@ -204,18 +262,8 @@ public class PokemonCpUtils {
 	 * @return New CP
 	 */
 	public static int getCpAfterPowerup(int cp, float combinedCpMultiplier) {
-		// Based on http://pokemongo.gamepress.gg/power-up-costs
-		float level = getLevelFromCpMultiplier(combinedCpMultiplier);
-		if (level <= 10) {
-			return cp + (int) Math.round((cp * 0.009426125469) / Math.pow(combinedCpMultiplier, 2));
-		}
-		if (level <= 20) {
-			return cp + (int) Math.round((cp * 0.008919025675) / Math.pow(combinedCpMultiplier, 2));
-		}
-		if (level <= 30) {
-			return cp + (int) Math.round((cp * 0.008924905903) / Math.pow(combinedCpMultiplier, 2));
-		}
-		return cp + (int) Math.round((cp * 0.00445946079) / Math.pow(combinedCpMultiplier, 2));
+		double factor = POWERUP_CP_FACTOR[getIndex(combinedCpMultiplier)];
+		return cp + (int) Math.round((cp * factor) / ((double) combinedCpMultiplier * combinedCpMultiplier));
 	}
 
 	/**
@@ -226,8 +274,8 @@ public class PokemonCpUtils {
 	 * @return Additional CP multiplier after upgrade
 	 */
 	public static float getAdditionalCpMultiplierAfterPowerup(float cpMultiplier, float additionalCpMultiplier) {
-		float nextLevel = getLevelFromCpMultiplier(cpMultiplier + additionalCpMultiplier) + .5f;
-		return LEVEL_CP_MULTIPLIER.get(nextLevel) - cpMultiplier;
+		int next = Math.min(MAX_INDEX, getIndex(cpMultiplier + additionalCpMultiplier) + 1);
+		return CP_MULTIPLIER[next] - cpMultiplier;
 	}
 
 	/**
@@ -238,66 +286,28 @@ public class PokemonCpUtils {
 	 * @return Amount of stardust
 	 */
 	public static int getStartdustCostsForPowerup(float combinedCpMultiplier, int powerups) {
-		// Based on http://pokemongo.gamepress.gg/power-up-costs
-		float level = getLevelFromCpMultiplier(combinedCpMultiplier);
-		if (level < 3 && powerups <= 4) {
-			return 200;
-		}
-		if (level < 5 && powerups <= 8) {
-			return 400;
-		}
-		if (level < 7 && powerups <= 12) {
-			return 600;
-		}
-		if (level < 9 && powerups <= 16) {
-			return 800;
-		}
-		if (level < 11 && powerups <= 20) {
-			return 1000;
-		}
-		if (level < 13 && powerups <= 24) {
-			return 1300;
-		}
-		if (level < 15 && powerups <= 28) {
-			return 1600;
-		}
-		if (level < 17 && powerups <= 32) {
-			return 1900;
-		}
-		if (level < 19 && powerups <= 36) {
-			return 2200;
-		}
-		if (level < 21 && powerups <= 40) {
-			return 2500;
-		}
-		if (level < 23 && powerups <= 44) {
-			return 3000;
-		}
-		if (level < 25 && powerups <= 48) {
-			return 3500;
-		}
-		if (level < 27 && powerups <= 52) {
-			return 4000;
-		}
-		if (level < 29 && powerups <= 56) {
-			return 4500;
-		}
-		if (level < 31 && powerups <= 60) {
-			return 5000;
-		}
-		if (level < 33 && powerups <= 64) {
-			return 6000;
-		}
-		if (level < 35 && powerups <= 68) {
-			return 7000;
-		}
-		if (level < 37 && powerups <= 72) {
-			return 8000;
-		}
-		if (level < 39 && powerups <= 76) {
-			return 9000;
+		return getStardustCost(getIndex(combinedCpMultiplier), powerups);
+	}
+
+	/**
+	 * Get the amount of stardust required to do a powerup for many pokemon at once
+	 *
+	 * @param combinedCpMultiplier All CP multiplier values combined, per pokemon
+	 * @param powerups             Number of previous powerups, per pokemon
+	 * @return Amount of stardust, per pokemon
+	 */
+	public static int[] getStartdustCostsForPowerup(float[] combinedCpMultiplier, int[] powerups) {
+		int[] costs = new int[combinedCpMultiplier.length];
+		for (int index = 0; index < costs.length; index++) {
+			costs[index] = getStardustCost(getIndex(combinedCpMultiplier[index]), powerups[index]);
 		}
-		return 10000;
+		return costs;
+	}
+
+	private static int getStardustCost(int index, int powerups) {
+		// Based on http://pokemongo.gamepress.gg/power-up-costs
+		int tier = Math.max(index / 4, (powerups - 1) / 4);
+		return STARDUST_COSTS[Math.max(0, Math.min(STARDUST_COSTS.length - 1, tier))];
 	}
 
 	/**
@@ -308,17 +318,27 @@ public class PokemonCpUtils {
 	 * @return Amount of candy
 	 */
 	public static int getCandyCostsForPowerup(float combinedCpMultiplier, int powerups) {
-		// Based on http://pokemongo.gamepress.gg/power-up-costs
-		float level = getLevelFromCpMultiplier(combinedCpMultiplier);
-		if (level < 11 && powerups <= 20) {
-			return 1;
-		}
-		if (level < 21 && powerups <= 40) {
-			return 2;
-		}
-		if (level < 31 && powerups <= 60) {
-			return 3;
+		return getCandyCost(getIndex(combinedCpMultiplier), powerups);
+	}
+
+	/**
+	 * Get the amount of candy required to do a powerup for many pokemon at once
+	 *
+	 * @param combinedCpMultiplier All CP multiplier values combined, per pokemon
+	 * @param powerups             Number of previous powerups, per pokemon
+	 * @return Amount of candy, per pokemon
+	 */
+	public static int[] getCandyCostsForPowerup(float[] combinedCpMultiplier, int[] powerups) {
+		int[] costs = new int[combinedCpMultiplier.length];
+		for (int index = 0; index < costs.length; index++) {
+			costs[index] = getCandyCost(getIndex(combinedCpMultiplier[index]), powerups[index]);
 		}
-		return 4;
+		return costs;
+	}
+
+	private static int getCandyCost(int index, int powerups) {
+		// Based on http://pokemongo.gamepress.gg/power-up-costs
+		int tier = Math.max(index / 20, (powerups - 1) / 20);
+		return CANDY_COSTS[Math.max(0, Math.min(CANDY_COSTS.length - 1, tier))];
 	}
-}
\ No newline at end of file
+}
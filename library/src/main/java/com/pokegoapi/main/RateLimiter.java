@@ -0,0 +1,129 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.main;
+
+import POGOProtos.Networking.Requests.RequestTypeOuterClass.RequestType;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Token bucket limits per request type, applied by the {@link RequestHandler} before an envelope is assembled.
+ * Requests that are out of tokens stay queued and are merged into a later envelope instead of being rejected.
+ * Request types without a limit are never held back.
+ */
+public class RateLimiter {
+	private final Map<RequestType, Bucket> buckets = new EnumMap<>(RequestType.class);
+
+	/**
+	 * Limits the given request type to a sustained rate, allowing bursts up to the given size after being idle.
+	 *
+	 * @param type             the request type to limit
+	 * @param permitsPerSecond the amount of requests of this type allowed per second
+	 * @param burst            the amount of requests of this type that may be sent at once
+	 */
+	public synchronized void setLimit(RequestType type, double permitsPerSecond, int burst) {
+		if (permitsPerSecond <= 0) {
+			throw new IllegalArgumentException("Permits per second must be positive");
+		}
+		if (burst < 1) {
+			throw new IllegalArgumentException("Burst must allow at least one request");
+		}
+		buckets.put(type, new Bucket(permitsPerSecond / 1000.0, burst));
+	}
+
+	/**
+	 * Removes the limit of the given request type.
+	 *
+	 * @param type the request type
+	 */
+	public synchronized void removeLimit(RequestType type) {
+		buckets.remove(type);
+	}
+
+	/**
+	 * Checks whether the given request type is limited.
+	 *
+	 * @param type the request type
+	 * @return true if a limit is set for this type
+	 */
+	public synchronized boolean hasLimit(RequestType type) {
+		return buckets.containsKey(type);
+	}
+
+	/**
+	 * Takes a token for the given request type if one is available.
+	 *
+	 * @param type the request type
+	 * @param now  the current time in milliseconds
+	 * @return true if a request of this type may be sent now
+	 */
+	synchronized boolean tryAcquire(RequestType type, long now) {
+		Bucket bucket = buckets.get(type);
+		return bucket == null || bucket.tryAcquire(now);
+	}
+
+	/**
+	 * Gets the time until a token for the given request type becomes available.
+	 *
+	 * @param type the request type
+	 * @param now  the current time in milliseconds
+	 * @return the delay in milliseconds, 0 if a request may be sent now
+	 */
+	synchronized long getDelay(RequestType type, long now) {
+		Bucket bucket = buckets.get(type);
+		return bucket == null ? 0 : bucket.getDelay(now);
+	}
+
+	private static class Bucket {
+		private final double permitsPerMillisecond;
+		private final int capacity;
+		private double tokens;
+		private long lastRefill = -1;
+
+		Bucket(double permitsPerMillisecond, int capacity) {
+			this.permitsPerMillisecond = permitsPerMillisecond;
+			this.capacity = capacity;
+			this.tokens = capacity;
+		}
+
+		private void refill(long now) {
+			if (lastRefill >= 0 && now > lastRefill) {
+				tokens = Math.min(capacity, tokens + (now - lastRefill) * permitsPerMillisecond);
+			}
+			if (now > lastRefill) {
+				lastRefill = now;
+			}
+		}
+
+		boolean tryAcquire(long now) {
+			refill(now);
+			if (tokens >= 1) {
+				tokens--;
+				return true;
+			}
+			return false;
+		}
+
+		long getDelay(long now) {
+			refill(now);
+			if (tokens >= 1) {
+				return 0;
+			}
+			return (long) Math.ceil((1 - tokens) / permitsPerMillisecond);
+		}
+	}
+}
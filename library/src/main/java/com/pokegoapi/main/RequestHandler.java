@@ -21,123 +21,227 @@ import POGOProtos.Networking.Envelopes.ResponseEnvelopeOuterClass.ResponseEnvelo
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.pokegoapi.api.PokemonGo;
-import com.pokegoapi.exceptions.AsyncPokemonGoException;
 import com.pokegoapi.exceptions.LoginFailedException;
 import com.pokegoapi.exceptions.RemoteServerException;
 import com.pokegoapi.util.AsyncHelper;
 import com.pokegoapi.util.Log;
 import com.pokegoapi.util.Signature;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import rx.Observable;
+import rx.schedulers.Schedulers;
+import rx.subjects.AsyncSubject;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
-public class RequestHandler implements Runnable {
+public class RequestHandler {
 	private static final String TAG = RequestHandler.class.getSimpleName();
+	private static final long DEFAULT_BATCH_WINDOW = 10;
+	private static final int DEFAULT_MAX_ENVELOPE_SIZE = 20;
+	private static final long CHALLENGE_POLL_INTERVAL = 1000;
+	private static final int DEFAULT_EXECUTOR_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+	private static final long DEFAULT_EXECUTOR_KEEP_ALIVE = 60;
+	private static ScheduledExecutorService defaultExecutor;
 	private final PokemonGo api;
-	private final Thread asyncHttpThread;
+	private final ScheduledExecutorService executor;
 	private final BlockingQueue<AsyncServerRequest> workQueue = new LinkedBlockingQueue<>();
-	private final Map<Long, ResultOrException> resultMap = new ConcurrentHashMap<>();
-	private String apiEndpoint;
+	private final Map<Long, AsyncSubject<ByteString>> pendingResults = new ConcurrentHashMap<>();
+	private final Queue<AsyncServerRequest> waitingRequests = new ConcurrentLinkedQueue<>();
+	private final RateLimiter rateLimiter = new RateLimiter();
+	private final Object drainLock = new Object();
+	private ScheduledFuture<?> scheduledDrain;
+	private long scheduledDrainTime;
+	private boolean draining;
+	private final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+	private final Object inFlightLock = new Object();
+	private final Object responseLock = new Object();
+	private volatile String apiEndpoint;
 	private OkHttpClient client;
 	private AtomicLong requestId = new AtomicLong(System.currentTimeMillis());
 	private Random random;
+	private volatile AuthTicket authTicket;
+	private volatile Signature.TicketSeeds ticketSeeds;
+	private volatile long batchWindow = DEFAULT_BATCH_WINDOW;
+	private volatile int maxInFlight = 1;
+	private volatile int maxEnvelopeSize = DEFAULT_MAX_ENVELOPE_SIZE;
+	private int inFlight;
 
 	/**
-	 * Instantiates a new Request handler.
+	 * Instantiates a new Request handler running on the default executor shared by all sessions.
 	 *
 	 * @param api    the api
 	 * @param client the client
 	 */
 	public RequestHandler(PokemonGo api, OkHttpClient client) {
+		this(api, client, getDefaultExecutor());
+	}
+
+	/**
+	 * Instantiates a new Request handler. The executor may be shared between any amount of sessions,
+	 * each session still sends its envelopes in order and never dispatches on two threads at once.
+	 * Envelopes are sent through the asynchronous http client, so the executor only builds envelopes and
+	 * schedules drains and never waits on the network; a few threads serve many sessions.
+	 *
+	 * @param api      the api
+	 * @param client   the client
+	 * @param executor the executor to dispatch requests on
+	 */
+	public RequestHandler(PokemonGo api, OkHttpClient client, ScheduledExecutorService executor) {
 		this.api = api;
 		this.client = client;
+		this.executor = executor;
 		apiEndpoint = ApiSettings.API_ENDPOINT;
-		asyncHttpThread = new Thread(this, "Async HTTP Thread");
-		asyncHttpThread.setDaemon(true);
-		asyncHttpThread.start();
 		random = new Random();
 	}
 
 	/**
-	 * Make an async server request. The answer will be provided in the future
+	 * Gets the executor used by request handlers that were not given one. It is shared by every session in this JVM,
+	 * so thousands of mostly idle accounts no longer need a dedicated thread each. Sessions that should not share it
+	 * can be given any other executor, such as one backed by virtual threads on runtimes that support them.
 	 *
-	 * @param asyncServerRequest Request to make
-	 * @return ByteString response to be processed in the future
+	 * @return the default executor
 	 */
-	public Observable<ByteString> sendAsyncServerRequests(final AsyncServerRequest asyncServerRequest) {
-		workQueue.offer(asyncServerRequest);
-		return Observable.from(new Future<ByteString>() {
-			@Override
-			public boolean cancel(boolean mayInterruptIfRunning) {
-				return false;
-			}
+	public static synchronized ScheduledExecutorService getDefaultExecutor() {
+		if (defaultExecutor == null) {
+			ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(DEFAULT_EXECUTOR_THREADS,
+					new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "Async HTTP Thread #" + count.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			executor.setKeepAliveTime(DEFAULT_EXECUTOR_KEEP_ALIVE, TimeUnit.SECONDS);
+			executor.allowCoreThreadTimeOut(true);
+			executor.setRemoveOnCancelPolicy(true);
+			defaultExecutor = executor;
+		}
+		return defaultExecutor;
+	}
 
-			@Override
-			public boolean isCancelled() {
-				return false;
-			}
+	/**
+	 * Gets the time the dispatcher waits after the first queued request before sending,
+	 * so that requests queued together are batched into one envelope.
+	 *
+	 * @return the batch window in milliseconds
+	 */
+	public long getBatchWindow() {
+		return batchWindow;
+	}
 
-			@Override
-			public boolean isDone() {
-				return resultMap.containsKey(asyncServerRequest.getId());
-			}
+	/**
+	 * Sets the time the dispatcher waits after the first queued request before sending.
+	 * A value of 0 sends as soon as work arrives, larger values (up to ~200ms) merge more requests per envelope.
+	 *
+	 * @param batchWindow the batch window in milliseconds
+	 */
+	public void setBatchWindow(long batchWindow) {
+		if (batchWindow < 0) {
+			throw new IllegalArgumentException("Batch window can not be negative");
+		}
+		this.batchWindow = batchWindow;
+	}
 
-			@Override
-			public ByteString get() throws InterruptedException, ExecutionException {
-				ResultOrException resultOrException = getResult(1, TimeUnit.MINUTES);
-				while (resultOrException == null) {
-					resultOrException = getResult(1, TimeUnit.MINUTES);
-				}
-				if (resultOrException.getException() != null) {
-					throw new ExecutionException(resultOrException.getException());
-				}
-				return resultOrException.getResult();
-			}
+	/**
+	 * Gets the maximum amount of envelopes this session keeps in flight at once.
+	 *
+	 * @return the maximum amount of envelopes in flight
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
 
-			@Override
-			public ByteString get(long timeout, TimeUnit unit)
-					throws InterruptedException, ExecutionException, TimeoutException {
-				ResultOrException resultOrException = getResult(timeout, unit);
-				if (resultOrException == null) {
-					throw new TimeoutException("No result found");
-				}
-				if (resultOrException.getException() != null) {
-					throw new ExecutionException(resultOrException.getException());
-				}
-				return resultOrException.getResult();
+	/**
+	 * Sets the maximum amount of envelopes this session keeps in flight at once. The default of 1 sends an envelope
+	 * and waits for its response before sending the next one. Higher values pipeline envelopes, so a slow request
+	 * no longer holds back everything queued behind it.
+	 * Pipelining only starts once the server handed out an auth ticket, which is then passed on to later envelopes.
+	 *
+	 * @param maxInFlight the maximum amount of envelopes in flight, at least 1
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("At least one envelope must be allowed in flight");
+		}
+		this.maxInFlight = maxInFlight;
+		scheduleNextDrain();
+	}
 
-			}
+	/**
+	 * Gets the maximum amount of queued requests sent in one envelope, not counting common requests.
+	 *
+	 * @return the maximum amount of requests per envelope
+	 */
+	public int getMaxEnvelopeSize() {
+		return maxEnvelopeSize;
+	}
 
-			private ResultOrException getResult(long timeout, TimeUnit timeUnit) throws InterruptedException {
-				long wait = api.currentTimeMillis() + timeUnit.toMillis(timeout);
-				while (!isDone()) {
-					Thread.sleep(10);
-					if (wait < api.currentTimeMillis()) {
-						return null;
-					}
-				}
-				return resultMap.remove(asyncServerRequest.getId());
-			}
-		});
+	/**
+	 * Sets the maximum amount of queued requests sent in one envelope, not counting common requests. Requests
+	 * beyond it are sent in the following envelopes, which are pipelined when more than one may be in flight.
+	 *
+	 * @param maxEnvelopeSize the maximum amount of requests per envelope, at least 1
+	 */
+	public void setMaxEnvelopeSize(int maxEnvelopeSize) {
+		if (maxEnvelopeSize < 1) {
+			throw new IllegalArgumentException("An envelope must hold at least one request");
+		}
+		this.maxEnvelopeSize = maxEnvelopeSize;
+	}
+
+	/**
+	 * Gets the rate limits applied to the requests of this session.
+	 *
+	 * @return the rate limiter
+	 */
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * Make an async server request. The answer will be provided in the future
+	 *
+	 * @param asyncServerRequest Request to make
+	 * @return ByteString response to be processed in the future
+	 */
+	public Observable<ByteString> sendAsyncServerRequests(final AsyncServerRequest asyncServerRequest) {
+		AsyncSubject<ByteString> result = AsyncSubject.create();
+		pendingResults.put(asyncServerRequest.getId(), result);
+		workQueue.offer(asyncServerRequest);
+		scheduleDrain(batchWindow);
+		// subscribers may fire blocking requests themselves, so never run them on the dispatcher thread
+		return result.observeOn(Schedulers.io());
 	}
 
 	/**
@@ -159,18 +263,54 @@ public class RequestHandler implements Runnable {
 	}
 
 	/**
-	 * Sends multiple ServerRequests in a thread safe manner.
+	 * Sends the given envelope through the asynchronous http client, the in flight slot taken for it is released
+	 * once the response has been handled.
 	 *
-	 * @param serverRequests list of ServerRequests to be sent
-	 * @throws RemoteServerException the remote server exception
-	 * @throws LoginFailedException  the login failed exception
+	 * @param requests the requests waiting for a result
+	 * @param serverRequests all requests of the envelope, including common requests
 	 */
-	private AuthTicket internalSendServerRequests(AuthTicket authTicket, ServerRequest... serverRequests)
-			throws RemoteServerException, LoginFailedException {
-		AuthTicket newAuthTicket = authTicket;
-		if (serverRequests.length == 0) {
-			return authTicket;
+	private void enqueueServerRequests(final List<AsyncServerRequest> requests, final ServerRequest[] serverRequests) {
+		okhttp3.Request httpRequest;
+		try {
+			httpRequest = buildHttpRequest(serverRequests);
+		} catch (RemoteServerException | LoginFailedException | RuntimeException e) {
+			fail(requests, e);
+			releaseSlot();
+			return;
 		}
+		client.newCall(httpRequest).enqueue(new Callback() {
+			@Override
+			public void onFailure(Call call, IOException exception) {
+				fail(requests, new RemoteServerException(exception));
+				releaseSlot();
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				boolean resend = false;
+				try (Response closeable = response) {
+					if (handleResponse(closeable, serverRequests)) {
+						deliver(requests, serverRequests);
+					} else {
+						resend = true;
+					}
+				} catch (Throwable throwable) {
+					// nothing may escape to the http dispatcher, or the slot and the waiting requests are lost
+					fail(requests, throwable);
+				} finally {
+					if (!resend) {
+						releaseSlot();
+					}
+				}
+				if (resend) {
+					enqueueServerRequests(requests, serverRequests);
+				}
+			}
+		});
+	}
+
+	private okhttp3.Request buildHttpRequest(ServerRequest[] serverRequests)
+			throws RemoteServerException, LoginFailedException {
 		RequestEnvelope.Builder builder = RequestEnvelope.newBuilder();
 		resetBuilder(builder, authTicket);
 
@@ -178,7 +318,12 @@ public class RequestHandler implements Runnable {
 			builder.addRequests(serverRequest.getRequest());
 		}
 
-		Signature.setSignature(api, builder);
+		Signature.TicketSeeds seeds = ticketSeeds;
+		if (seeds == null || !seeds.isFor(builder.getAuthTicket())) {
+			seeds = new Signature.TicketSeeds(builder.getAuthTicket());
+			ticketSeeds = seeds;
+		}
+		Signature.setSignature(api, builder, seeds);
 
 		ByteArrayOutputStream stream = new ByteArrayOutputStream();
 		RequestEnvelope request = builder.build();
@@ -189,65 +334,91 @@ public class RequestHandler implements Runnable {
 		}
 
 		RequestBody body = RequestBody.create(null, stream.toByteArray());
-		okhttp3.Request httpRequest = new okhttp3.Request.Builder()
+		return new okhttp3.Request.Builder()
 				.url(apiEndpoint)
 				.post(body)
 				.build();
+	}
 
-		try (Response response = client.newCall(httpRequest).execute()) {
-			if (response.code() != 200) {
-				throw new RemoteServerException("Got a unexpected http code : " + response.code());
-			}
+	/**
+	 * Reads the response of an envelope and hands its payloads to the given requests.
+	 *
+	 * @param response the http response
+	 * @param serverRequests the requests sent with the envelope
+	 * @return false if the envelope has to be sent again to the new api endpoint
+	 * @throws RemoteServerException the remote server exception
+	 * @throws LoginFailedException  the login failed exception
+	 */
+	private boolean handleResponse(Response response, ServerRequest[] serverRequests)
+			throws RemoteServerException, LoginFailedException {
+		if (response.code() != 200) {
+			throw new RemoteServerException("Got a unexpected http code : " + response.code());
+		}
 
-			ResponseEnvelope responseEnvelop;
-			try (InputStream content = response.body().byteStream()) {
-				responseEnvelop = ResponseEnvelope.parseFrom(content);
-			} catch (IOException e) {
-				// retrieved garbage from the server
-				throw new RemoteServerException("Received malformed response : " + e);
-			}
+		ResponseEnvelope responseEnvelop;
+		try (InputStream content = response.body().byteStream()) {
+			responseEnvelop = ResponseEnvelope.parseFrom(content);
+		} catch (IOException e) {
+			// retrieved garbage from the server
+			throw new RemoteServerException("Received malformed response : " + e);
+		}
 
-			if (responseEnvelop.getApiUrl() != null && responseEnvelop.getApiUrl().length() > 0) {
-				apiEndpoint = "https://" + responseEnvelop.getApiUrl() + "/rpc";
-			}
+		if (responseEnvelop.getApiUrl() != null && responseEnvelop.getApiUrl().length() > 0) {
+			apiEndpoint = "https://" + responseEnvelop.getApiUrl() + "/rpc";
+		}
 
-			if (responseEnvelop.hasAuthTicket()) {
-				newAuthTicket = responseEnvelop.getAuthTicket();
-			}
+		if (responseEnvelop.hasAuthTicket()) {
+			updateAuthTicket(responseEnvelop.getAuthTicket());
+		}
 
-			if (responseEnvelop.getStatusCode() == ResponseEnvelope.StatusCode.INVALID_AUTH_TOKEN) {
-				throw new LoginFailedException(String.format("Invalid Auth status code recieved, token not refreshed? %s %s",
-						responseEnvelop.getApiUrl(), responseEnvelop.getError()));
-			} else if (responseEnvelop.getStatusCode() == ResponseEnvelope.StatusCode.REDIRECT) {
-				// 53 means that the api_endpoint was not correctly set, should be at this point, though, so redo the request
-				return internalSendServerRequests(newAuthTicket, serverRequests);
-			} else if (responseEnvelop.getStatusCode() == ResponseEnvelope.StatusCode.BAD_REQUEST) {
-				throw new RemoteServerException("Your account may be banned! please try from the official client.");
-			}
+		if (responseEnvelop.getStatusCode() == ResponseEnvelope.StatusCode.INVALID_AUTH_TOKEN) {
+			throw new LoginFailedException(String.format("Invalid Auth status code recieved, token not refreshed? %s %s",
+					responseEnvelop.getApiUrl(), responseEnvelop.getError()));
+		} else if (responseEnvelop.getStatusCode() == ResponseEnvelope.StatusCode.REDIRECT) {
+			// 53 means that the api_endpoint was not correctly set, should be at this point, though, so redo the request
+			return false;
+		} else if (responseEnvelop.getStatusCode() == ResponseEnvelope.StatusCode.BAD_REQUEST) {
+			throw new RemoteServerException("Your account may be banned! please try from the official client.");
+		}
 
 
+		/**
+		 * map each reply to the numeric response,
+		 * ie first response = first request and send back to the requests to toBlocking.
+		 * */
+		int count = 0;
+		for (ByteString payload : responseEnvelop.getReturnsList()) {
+			ServerRequest serverReq = serverRequests[count];
 			/**
-			 * map each reply to the numeric response,
-			 * ie first response = first request and send back to the requests to toBlocking.
-			 * */
-			int count = 0;
-			for (ByteString payload : responseEnvelop.getReturnsList()) {
-				ServerRequest serverReq = serverRequests[count];
-				/**
-				 * TODO: Probably all other payloads are garbage as well in this case,
-				 * so might as well throw an exception and leave this loop */
-				if (payload != null) {
-					serverReq.handleData(payload);
-				}
-				count++;
+			 * TODO: Probably all other payloads are garbage as well in this case,
+			 * so might as well throw an exception and leave this loop */
+			if (payload != null) {
+				serverReq.handleData(payload);
 			}
-		} catch (IOException e) {
-			throw new RemoteServerException(e);
-		} catch (RemoteServerException e) {
-			// catch it, so the auto-close of resources triggers, but don't wrap it in yet another RemoteServer Exception
-			throw e;
+			count++;
 		}
-		return newAuthTicket;
+		return true;
+	}
+
+	/**
+	 * Pipelined responses may arrive out of order, only hand the ticket on if it does not expire before
+	 * the one already in use.
+	 *
+	 * @param newAuthTicket the ticket received from the server
+	 */
+	private synchronized void updateAuthTicket(AuthTicket newAuthTicket) {
+		if (authTicket == null || newAuthTicket.getExpireTimestampMs() >= authTicket.getExpireTimestampMs()) {
+			authTicket = newAuthTicket;
+			// the seeds are derived again from the new ticket by the next envelope
+			ticketSeeds = null;
+		}
+	}
+
+	private boolean hasValidAuthTicket() {
+		AuthTicket ticket = authTicket;
+		return ticket != null
+				&& ticket.getExpireTimestampMs() > 0
+				&& ticket.getExpireTimestampMs() > api.currentTimeMillis();
 	}
 
 	private void resetBuilder(RequestEnvelope.Builder builder, AuthTicket authTicket)
@@ -269,26 +440,186 @@ public class RequestHandler implements Runnable {
 		builder.setAccuracy(api.getAccuracy());
 	}
 
+	/**
+	 * Without a valid auth ticket, envelopes go out one at a time so the ticket of the first response
+	 * is in place before anything is pipelined behind it.
+	 *
+	 * @return if another envelope may be sent now
+	 */
+	private boolean isSlotAvailable() {
+		synchronized (inFlightLock) {
+			return inFlight < maxInFlight && (inFlight == 0 || hasValidAuthTicket());
+		}
+	}
+
+	private boolean tryAcquireSlot() {
+		synchronized (inFlightLock) {
+			if (!isSlotAvailable()) {
+				return false;
+			}
+			inFlight++;
+			return true;
+		}
+	}
+
+	private void releaseSlot() {
+		synchronized (inFlightLock) {
+			inFlight--;
+		}
+		scheduleNextDrain();
+	}
+
+	/**
+	 * Completes the requests of a handled envelope and parses the common requests appended to it.
+	 *
+	 * @param requests the requests waiting for a result
+	 * @param serverRequests all requests of the envelope, including common requests
+	 */
+	private void deliver(List<AsyncServerRequest> requests, ServerRequest[] serverRequests) {
+		// pipelined responses are handled on http threads, keep inventory and settings updates serial
+		synchronized (responseLock) {
+			for (int i = 0; i != requests.size(); i++) {
+				try {
+					complete(requests.get(i), serverRequests[i].getData());
+				} catch (InvalidProtocolBufferException e) {
+					fail(requests.get(i), e);
+				}
+			}
+
+			for (int i = requests.size(); i != serverRequests.length; i++) {
+				try {
+					CommonRequests.parse(api, serverRequests[i].getType(), serverRequests[i].getData());
+				} catch (InvalidProtocolBufferException e) {
+					//TODO: notify error even in case of common requests?
+				}
+			}
+		}
+	}
+
+	private void complete(AsyncServerRequest request, ByteString data) {
+		AsyncSubject<ByteString> result = pendingResults.remove(request.getId());
+		if (result != null) {
+			result.onNext(data);
+			result.onCompleted();
+		}
+	}
+
+	private void fail(AsyncServerRequest request, Throwable throwable) {
+		AsyncSubject<ByteString> result = pendingResults.remove(request.getId());
+		if (result != null) {
+			result.onError(throwable);
+		}
+	}
+
+	private void fail(List<AsyncServerRequest> requests, Throwable throwable) {
+		for (AsyncServerRequest request : requests) {
+			fail(request, throwable);
+		}
+	}
+
 	private Long getRequestId() {
 		return requestId.getAndIncrement();
 	}
 
-	@Override
-	public void run() {
-		List<AsyncServerRequest> requests = new LinkedList<>();
-		AuthTicket authTicket = null;
-		while (true) {
-			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-				throw new AsyncPokemonGoException("System shutdown", e);
+	/**
+	 * Schedules a drain of the work queue on the executor, unless one is already running or due earlier.
+	 *
+	 * @param delay the delay in milliseconds
+	 */
+	private void scheduleDrain(long delay) {
+		synchronized (drainLock) {
+			// a running drain schedules the next one itself once it is done
+			if (draining) {
+				return;
+			}
+			long time = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+			if (scheduledDrain != null) {
+				if (scheduledDrainTime - time <= 0 || !scheduledDrain.cancel(false)) {
+					return;
+				}
 			}
-			if (workQueue.isEmpty() || api.hasChallenge()) {
-				continue;
+			scheduledDrainTime = time;
+			scheduledDrain = executor.schedule(drainTask, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Schedules the next drain if requests are waiting and a slot is free, otherwise releasing a slot does so.
+	 * Requests held back by their rate limit are picked up once a token for one of them is available.
+	 */
+	private void scheduleNextDrain() {
+		if (!isSlotAvailable()) {
+			return;
+		}
+		if (!workQueue.isEmpty()) {
+			scheduleDrain(0);
+		} else if (!waitingRequests.isEmpty()) {
+			long now = api.currentTimeMillis();
+			long delay = Long.MAX_VALUE;
+			for (AsyncServerRequest request : waitingRequests) {
+				delay = Math.min(delay, rateLimiter.getDelay(request.getType(), now));
+			}
+			scheduleDrain(delay);
+		}
+	}
+
+	private void drain() {
+		synchronized (drainLock) {
+			scheduledDrain = null;
+			draining = true;
+		}
+		boolean challenge = api.hasChallenge();
+		try {
+			if (!challenge) {
+				dispatch();
+			}
+		} finally {
+			synchronized (drainLock) {
+				draining = false;
+			}
+		}
+		if (challenge) {
+			// hold everything back while a challenge is pending, verifyChallenge clears it before queueing
+			scheduleDrain(CHALLENGE_POLL_INTERVAL);
+		} else {
+			scheduleNextDrain();
+		}
+	}
+
+	/**
+	 * Takes the requests that are within their rate limit from the waiting requests, keeping their queueing order,
+	 * up to the maximum envelope size. The others keep waiting and are merged into a later envelope.
+	 *
+	 * @return the requests to send now
+	 */
+	private List<AsyncServerRequest> takeAllowedRequests() {
+		List<AsyncServerRequest> requests = new ArrayList<>();
+		long now = api.currentTimeMillis();
+		int maxSize = maxEnvelopeSize;
+		Iterator<AsyncServerRequest> iterator = waitingRequests.iterator();
+		while (iterator.hasNext() && requests.size() < maxSize) {
+			AsyncServerRequest request = iterator.next();
+			if (rateLimiter.tryAcquire(request.getType(), now)) {
+				requests.add(request);
+				iterator.remove();
 			}
+		}
+		return requests;
+	}
 
-			workQueue.drainTo(requests);
+	private void dispatch() {
+		if (!tryAcquireSlot()) {
+			return;
+		}
+		workQueue.drainTo(waitingRequests);
+		List<AsyncServerRequest> requests = takeAllowedRequests();
+		if (requests.isEmpty()) {
+			releaseSlot();
+			return;
+		}
 
+		ServerRequest[] arrayServerRequests;
+		try {
 			ArrayList<ServerRequest> serverRequests = new ArrayList<>();
 			boolean addCommon = false;
 			for (AsyncServerRequest request : requests) {
@@ -297,46 +628,18 @@ public class RequestHandler implements Runnable {
 					addCommon = true;
 			}
 
-			ServerRequest[] commonRequests = new ServerRequest[0];
-
 			if (addCommon) {
-				commonRequests = CommonRequests.getCommonRequests(api);
-				Collections.addAll(serverRequests, commonRequests);
+				Collections.addAll(serverRequests, CommonRequests.getCommonRequests(api));
 			}
 
-			ServerRequest[] arrayServerRequests = serverRequests.toArray(new ServerRequest[serverRequests.size()]);
-
-			try {
-				authTicket = internalSendServerRequests(authTicket, arrayServerRequests);
-
-				for (int i = 0; i != requests.size(); i++) {
-					try {
-						resultMap.put(requests.get(i).getId(), ResultOrException.getResult(arrayServerRequests[i].getData()));
-					} catch (InvalidProtocolBufferException e) {
-						resultMap.put(requests.get(i).getId(), ResultOrException.getError(e));
-					}
-				}
-
-				for (int i = 0; i != commonRequests.length; i++) {
-					try {
-						CommonRequests.parse(api, arrayServerRequests[requests.size() + i].getType(),
-								arrayServerRequests[requests.size() + i].getData());
-					} catch (InvalidProtocolBufferException e) {
-						//TODO: notify error even in case of common requests?
-					}
-				}
-
-				continue;
-			} catch (RemoteServerException | LoginFailedException e) {
-				for (AsyncServerRequest request : requests) {
-					resultMap.put(request.getId(), ResultOrException.getError(e));
-				}
-				continue;
-			} finally {
-				requests.clear();
-			}
+			arrayServerRequests = serverRequests.toArray(new ServerRequest[serverRequests.size()]);
+		} catch (RuntimeException e) {
+			// the requests already left the queue, the executor would swallow this and leave them waiting forever
+			fail(requests, e);
+			releaseSlot();
+			return;
 		}
+		// even a single slot goes through the asynchronous client, the executor thread is never held for a round trip
+		enqueueServerRequests(requests, arrayServerRequests);
 	}
-
-
 }
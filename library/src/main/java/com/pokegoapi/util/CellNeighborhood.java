@@ -0,0 +1,240 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.util;
+
+import com.pokegoapi.google.common.geometry.MutableInteger;
+import com.pokegoapi.google.common.geometry.S2CellId;
+import com.pokegoapi.google.common.geometry.S2LatLng;
+import lombok.EqualsAndHashCode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the square of level 15 cells around a location, as requested by GET_MAP_OBJECTS. Results are remembered
+ * per center cell, since the player usually stays in the same cell for many map refreshes. Squares that reach over
+ * the edge of a cube face continue on the adjacent face.
+ */
+public final class CellNeighborhood {
+	public static final int CELL_LEVEL = 15;
+	private static final int CELL_SIZE = 1 << (S2CellId.MAX_LEVEL - CELL_LEVEL);
+	private static final int MAX_CACHED = 64;
+	// edges in the order of S2CellId.getEdgeNeighbors, counterclockwise on every face
+	private static final int EDGE_EAST = 1;
+	private static final int EDGE_NORTH = 2;
+	private static final int EDGE_WEST = 3;
+
+	private static final Map<Key, Neighborhood> CACHE = new LinkedHashMap<Key, Neighborhood>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Neighborhood> eldest) {
+			return size() > MAX_CACHED;
+		}
+	};
+
+	private CellNeighborhood() {
+	}
+
+	/**
+	 * Gets the cells around a location, column by column
+	 *
+	 * @param latitude the latitude
+	 * @param longitude the longitude
+	 * @param width the width of the square, even widths are rounded up
+	 * @return the cell ids
+	 */
+	public static long[] getCellIds(double latitude, double longitude, int width) {
+		return get(getCenter(latitude, longitude), width).cellIds.clone();
+	}
+
+	/**
+	 * Gets the cells around a cell, column by column
+	 *
+	 * @param center the level 15 cell id in the center
+	 * @param width the width of the square, even widths are rounded up
+	 * @return the cell ids
+	 */
+	public static long[] getCellIds(long center, int width) {
+		return get(center, width).cellIds.clone();
+	}
+
+	/**
+	 * Gets the cells around a location, column by column
+	 *
+	 * @param latitude the latitude
+	 * @param longitude the longitude
+	 * @param width the width of the square, even widths are rounded up
+	 * @return an unmodifiable list of the cell ids
+	 */
+	public static List<Long> getCellIdList(double latitude, double longitude, int width) {
+		return get(getCenter(latitude, longitude), width).cellIdList;
+	}
+
+	private static long getCenter(double latitude, double longitude) {
+		return S2CellId.fromLatLng(S2LatLng.fromDegrees(latitude, longitude)).parent(CELL_LEVEL).id();
+	}
+
+	private static Neighborhood get(long center, int width) {
+		Key key = new Key(center, width);
+		Neighborhood neighborhood;
+		synchronized (CACHE) {
+			neighborhood = CACHE.get(key);
+		}
+		if (neighborhood == null) {
+			neighborhood = new Neighborhood(compute(new S2CellId(center), width));
+			synchronized (CACHE) {
+				CACHE.put(key, neighborhood);
+			}
+		}
+		return neighborhood;
+	}
+
+	private static long[] compute(S2CellId center, int width) {
+		MutableInteger index = new MutableInteger(0);
+		MutableInteger jindex = new MutableInteger(0);
+		int face = center.toFaceIJOrientation(index, jindex, null);
+		// leaf coordinates of the center of the center cell
+		int centerI = (index.intValue() & -CELL_SIZE) + CELL_SIZE / 2;
+		int centerJ = (jindex.intValue() & -CELL_SIZE) + CELL_SIZE / 2;
+
+		int halfWidth = width / 2;
+		int reach = halfWidth * CELL_SIZE;
+		if (centerI - reach < 0 || centerI + reach >= S2CellId.MAX_SIZE
+				|| centerJ - reach < 0 || centerJ + reach >= S2CellId.MAX_SIZE) {
+			return walk(center, halfWidth);
+		}
+		long[] cells = new long[(halfWidth * 2 + 1) * (halfWidth * 2 + 1)];
+		int count = 0;
+		for (int x = -halfWidth; x <= halfWidth; x++) {
+			for (int y = -halfWidth; y <= halfWidth; y++) {
+				cells[count++] = S2CellId.fromFaceIJ(face, centerI + x * CELL_SIZE, centerJ + y * CELL_SIZE)
+						.parent(CELL_LEVEL).id();
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * Builds a square that reaches over the edge of the face by walking from cell to edge neighbor, like S2 wraps
+	 * neighbors onto adjacent faces. A walk keeps going straight on by leaving each cell through the edge opposite
+	 * to the one it came in through, so it follows the rotation of the grid from one face to the next.
+	 */
+	private static long[] walk(S2CellId center, int halfWidth) {
+		int size = halfWidth * 2 + 1;
+		S2CellId[] neighbors = new S2CellId[4];
+		S2CellId[] columns = new S2CellId[size];
+		// the edge each column cell is left through to go up its column
+		int[] upEdges = new int[size];
+		columns[halfWidth] = center;
+		upEdges[halfWidth] = EDGE_NORTH;
+		MutableInteger edge = new MutableInteger(EDGE_EAST);
+		for (int x = 1; x <= halfWidth; x++) {
+			columns[halfWidth + x] = move(columns[halfWidth + x - 1], edge, neighbors);
+			// north is to the left of east
+			upEdges[halfWidth + x] = (edge.intValue() + 1) % 4;
+		}
+		edge.setValue(EDGE_WEST);
+		for (int x = 1; x <= halfWidth; x++) {
+			columns[halfWidth - x] = move(columns[halfWidth - x + 1], edge, neighbors);
+			// north is to the right of west
+			upEdges[halfWidth - x] = (edge.intValue() + 3) % 4;
+		}
+
+		long[] cells = new long[size * size];
+		int count = 0;
+		long[] column = new long[size];
+		for (int x = 0; x < size; x++) {
+			column[halfWidth] = columns[x].id();
+			edge.setValue(upEdges[x]);
+			S2CellId cell = columns[x];
+			for (int y = 1; y <= halfWidth; y++) {
+				cell = move(cell, edge, neighbors);
+				column[halfWidth + y] = cell.id();
+			}
+			edge.setValue((upEdges[x] + 2) % 4);
+			cell = columns[x];
+			for (int y = 1; y <= halfWidth; y++) {
+				cell = move(cell, edge, neighbors);
+				column[halfWidth - y] = cell.id();
+			}
+			for (long cellId : column) {
+				// around cube corners, where only three faces meet, cells can come up twice
+				if (!contains(cells, count, cellId)) {
+					cells[count++] = cellId;
+				}
+			}
+		}
+		return count == cells.length ? cells : Arrays.copyOf(cells, count);
+	}
+
+	/**
+	 * Moves to the edge neighbor of a cell, and updates the edge to the one that continues straight on from there
+	 *
+	 * @param cell the cell to move from
+	 * @param edge the edge to leave through, set to the edge to leave the neighbor through
+	 * @param neighbors buffer for the edge neighbors
+	 * @return the neighbor
+	 */
+	private static S2CellId move(S2CellId cell, MutableInteger edge, S2CellId[] neighbors) {
+		cell.getEdgeNeighbors(neighbors);
+		S2CellId next = neighbors[edge.intValue()];
+		next.getEdgeNeighbors(neighbors);
+		for (int index = 0; index < neighbors.length; index++) {
+			if (neighbors[index].equals(cell)) {
+				edge.setValue((index + 2) % 4);
+				break;
+			}
+		}
+		return next;
+	}
+
+	private static boolean contains(long[] cells, int count, long cellId) {
+		for (int i = 0; i < count; i++) {
+			if (cells[i] == cellId) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static class Neighborhood {
+		private final long[] cellIds;
+		private final List<Long> cellIdList;
+
+		Neighborhood(long[] cellIds) {
+			this.cellIds = cellIds;
+			List<Long> list = new ArrayList<>(cellIds.length);
+			for (long cellId : cellIds) {
+				list.add(cellId);
+			}
+			this.cellIdList = Collections.unmodifiableList(list);
+		}
+	}
+
+	@EqualsAndHashCode
+	private static class Key {
+		private final long center;
+		private final int width;
+
+		Key(long center, int width) {
+			this.center = center;
+			this.width = width;
+		}
+	}
+}
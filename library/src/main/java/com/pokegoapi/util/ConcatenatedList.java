@@ -0,0 +1,115 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.util;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable list that concatenates other lists without copying them, so snapshots can share the lists they are
+ * made of. The concatenated lists must not be changed afterwards.
+ *
+ * @param <T> the element type
+ */
+public class ConcatenatedList<T> extends AbstractList<T> implements RandomAccess {
+	private final List<List<T>> parts;
+	// offsets[i] is the index of the first element of parts[i]
+	private final int[] offsets;
+	private final int size;
+
+	/**
+	 * Concatenates the given lists
+	 *
+	 * @param parts the lists, in order
+	 */
+	public ConcatenatedList(Collection<? extends List<T>> parts) {
+		this.parts = new ArrayList<>(parts.size());
+		this.offsets = new int[parts.size()];
+		int count = 0;
+		for (List<T> part : parts) {
+			if (part.isEmpty()) {
+				continue;
+			}
+			offsets[this.parts.size()] = count;
+			this.parts.add(part);
+			count += part.size();
+		}
+		this.size = count;
+	}
+
+	/**
+	 * Gets an empty list
+	 *
+	 * @param <T> the element type
+	 * @return an empty list
+	 */
+	public static <T> ConcatenatedList<T> empty() {
+		return new ConcatenatedList<>(Collections.<List<T>>emptyList());
+	}
+
+	@Override
+	public T get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		int part = Arrays.binarySearch(offsets, 0, parts.size(), index);
+		if (part < 0) {
+			part = -part - 2;
+		}
+		return parts.get(part).get(index - offsets[part]);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			private int part;
+			private Iterator<T> current = Collections.emptyIterator();
+
+			@Override
+			public boolean hasNext() {
+				while (!current.hasNext() && part < parts.size()) {
+					current = parts.get(part++).iterator();
+				}
+				return current.hasNext();
+			}
+
+			@Override
+			public T next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return current.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
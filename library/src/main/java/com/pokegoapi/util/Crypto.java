@@ -14,38 +14,66 @@
  */
 package com.pokegoapi.util;
 
-import java.math.BigInteger;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.IntBuffer;
-import java.util.ArrayList;
-import java.util.Arrays;
 
 public class Crypto {
+	private static final int BLOCK_SIZE = 256;
+	private static final int BLOCK_WORDS = BLOCK_SIZE / 4;
+
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
 	private static class Rand {
 		public long state;
 	}
 
-	private static byte[] makeIv(Rand rand) {
-		byte[] iv = new byte[256];
-		for (int i = 0; i < 256; i++) {
-			rand.state = (0x41C64E6D * rand.state) + 0x3039;
-			long shiftedRand = rand.state >> 16;
-			iv[i] = Long.valueOf(shiftedRand).byteValue();
+	/**
+	 * Arrays reused by every encryption on the same thread.
+	 */
+	private static class Scratch {
+		final Rand rand = new Rand();
+		final int[] iv = new int[BLOCK_WORDS];
+		final int[] vector = new int[BLOCK_WORDS];
+		final int[] tmp = new int[193];
+		final byte[] block = new byte[BLOCK_SIZE];
+	}
+
+	private static void makeIv(Rand rand, int[] iv) {
+		for (int i = 0; i < BLOCK_WORDS; i++) {
+			int word = 0;
+			for (int j = 0; j < 4; j++) {
+				rand.state = (0x41C64E6D * rand.state) + 0x3039;
+				word = (word << 8) | (int) ((rand.state >> 16) & 0xFF);
+			}
+			iv[i] = word;
 		}
-		return iv;
 	}
 
 	private static byte makeIntegrityByte(Rand rand) {
 		rand.state = (0x41C64E6D * rand.state) + 0x3039;
-		long shiftedRand = rand.state >> 16;
-		byte lastbyte = Long.valueOf(shiftedRand).byteValue();
+		byte lastbyte = (byte) (rand.state >> 16);
 
 		byte v74 = (byte) ((lastbyte ^ 0x0C) & lastbyte);
 		byte v75 = (byte) (((~v74 & 0x67) | (v74 & 0x98)) ^ 0x6F | (v74 & 8));
 		return v75;
 	}
 
+	/**
+	 * Computes the size of the cipher text of an input with the given length.
+	 *
+	 * @param inputLength length of the input data
+	 * @return size of the encrypted output
+	 */
+	public static int encryptedSize(int inputLength) {
+		return inputLength + (BLOCK_SIZE - (inputLength % BLOCK_SIZE)) + 5;
+	}
+
 	/**
 	 * Shuffles bytes.
 	 *
@@ -54,43 +82,82 @@ public class Crypto {
 	 * @return shuffled bytes
 	 */
 	public static CipherText encrypt(byte[] input, long msSinceStart) {
-		Rand rand = new Rand();
+		byte[] output = new byte[encryptedSize(input.length)];
+		encrypt(ByteBuffer.wrap(input), msSinceStart, ByteBuffer.wrap(output));
+		return new CipherText(output);
+	}
 
-		byte[] arr3;
-		CipherText output;
+	/**
+	 * Shuffles the remaining bytes of the input straight into the output, which needs
+	 * {@link #encryptedSize(int)} bytes remaining. Both positions are advanced like a {@link javax.crypto.Cipher}
+	 * does, their byte order is left untouched.
+	 *
+	 * @param input input data
+	 * @param msSinceStart
+	 * @param output buffer to write the shuffled bytes to
+	 */
+	public static void encrypt(ByteBuffer input, long msSinceStart, ByteBuffer output) {
+		int length = input.remaining();
+		int size = encryptedSize(length);
+		if (output.remaining() < size) {
+			throw new BufferOverflowException();
+		}
 
-		rand.state = msSinceStart;
+		Scratch scratch = SCRATCH.get();
+		Rand rand = scratch.rand;
+		int[] iv = scratch.iv;
+		int[] vector = scratch.vector;
 
-		byte[] iv = makeIv(rand);
-		output = new CipherText(input, msSinceStart, rand);
+		rand.state = msSinceStart;
+		makeIv(rand, iv);
 
-		for (int i = 0; i < output.content.size(); ++i) {
-			byte[] current = output.content.get(i);
+		ByteBuffer in = input.duplicate().order(ByteOrder.BIG_ENDIAN);
+		ByteBuffer out = output.duplicate().order(ByteOrder.BIG_ENDIAN);
+		int inStart = in.position();
+		int outStart = out.position();
+		out.putInt(outStart, (int) msSinceStart);
 
-			for (int j = 0; j < 256; j++) {
-				current[j] ^= iv[j];
+		int blockCount = (size - 5) / BLOCK_SIZE;
+		for (int block = 0; block < blockCount; block++) {
+			int offset = block * BLOCK_SIZE;
+			if (block < blockCount - 1) {
+				for (int i = 0; i < BLOCK_WORDS; i++) {
+					vector[i] = in.getInt(inStart + offset + i * 4) ^ iv[i];
+				}
+			} else {
+				// the last block is padded with zeroes, its last byte holds the padding length
+				byte[] last = scratch.block;
+				int tail = length - offset;
+				for (int i = 0; i < tail; i++) {
+					last[i] = in.get(inStart + offset + i);
+				}
+				for (int i = tail; i < BLOCK_SIZE - 1; i++) {
+					last[i] = 0;
+				}
+				last[BLOCK_SIZE - 1] = (byte) (BLOCK_SIZE - (length % BLOCK_SIZE));
+				for (int i = 0; i < BLOCK_WORDS; i++) {
+					int word = ((last[i * 4] & 0xFF) << 24) | ((last[i * 4 + 1] & 0xFF) << 16)
+							| ((last[i * 4 + 2] & 0xFF) << 8) | (last[i * 4 + 3] & 0xFF);
+					vector[i] = word ^ iv[i];
+				}
 			}
 
-			int[] temp2 = new int[0x100 / 4];
-			// only use 256 bytes from input.
-			IntBuffer intBuf = ByteBuffer.wrap(Arrays.copyOf(current, 0x100))//
-					.order(ByteOrder.BIG_ENDIAN)//
-					.asIntBuffer();
-			intBuf.get(temp2);
-			arr3 = shuffle2(temp2);
-
-			for (int k = 0; k < 256; ++k)
-				iv[k] = arr3[k];
+			shuffle2(vector, scratch.tmp);
 
-			for (int k = 0; k < 256; ++k)
-				current[k] = arr3[k];
+			// the shuffled block is the iv of the next one
+			for (int i = 0; i < BLOCK_WORDS; i++) {
+				iv[i] = vector[i];
+				out.putInt(outStart + 4 + offset + i * 4, vector[i]);
+			}
 		}
 
-		return output;
+		out.put(outStart + size - 1, makeIntegrityByte(rand));
+
+		input.position(input.limit());
+		output.position(outStart + size);
 	}
 
-	private static byte[] shuffle2(int[] vector) {
-		int[] tmp = new int[193];
+	private static void shuffle2(int[] vector, int[] tmp) {
 		tmp[0] = vector[7] ^ vector[15];
 		tmp[1] = ~vector[7];
 		tmp[2] = ~vector[1];
@@ -1388,10 +1455,10 @@ public class Crypto {
 		tmp[38] = tmp[33] ^ tmp[62] ^ tmp[46] & ~tmp[62] ^ (tmp[78] & (tmp[111] ^ tmp[138] ^ tmp[77] & (tmp[65] ^ tmp[38] ^ tmp[124])) ^ tmp[32] & (tmp[53] ^ tmp[142])) ^ tmp[77] & ~(tmp[58] ^ tmp[152]
 				^ tmp[46] & ~tmp[150]);
 		tmp[65] = ~tmp[38];
-		return shuffle2_2(tmp, vector);
+		shuffle2_2(tmp, vector);
 	}
 
-	private static byte[] shuffle2_2(int[] tmp, int vector[]) {
+	private static void shuffle2_2(int[] tmp, int vector[]) {
 		tmp[124] = tmp[79] | tmp[38];
 		tmp[12] =
 				tmp[23] ^ tmp[45] ^ (tmp[132] ^ tmp[45]) & tmp[38] ^ (tmp[28] & ~(tmp[21] ^ tmp[12] ^ (tmp[11] ^ (tmp[21] | tmp[114])) & tmp[65] ^ tmp[56] & (tmp[1] ^ tmp[38] & ~tmp[4])) ^ tmp[56] & ~(tmp[81]
@@ -3492,67 +3559,28 @@ public class Crypto {
 		vector[61] = tmp[127];
 		vector[62] = ~(tmp[61] ^ (tmp[181] ^ tmp[119] & tmp[134]));
 		vector[63] = tmp[30];
-
-		ByteBuffer byteBuf_out = ByteBuffer.allocate(0x100).order(ByteOrder.BIG_ENDIAN);
-		IntBuffer intBuf_out = byteBuf_out.asIntBuffer();
-		intBuf_out.put(vector);
-
-		return byteBuf_out.array();
 	}
 
 
 	public static class CipherText {
-		Rand rand;
-		byte[] prefix;
-		public ArrayList<byte[]> content;
-
-		int totalsize;
-		int inputLen;
-
-		byte[] intToBytes(long x) {
-			ByteBuffer buffer = ByteBuffer.allocate(4);
-			buffer.putInt(new BigInteger(String.valueOf(x)).intValue());
-			return buffer.array();
-		}
+		private final byte[] data;
 
 		/**
-		 * Create new CipherText with contents and IV.
+		 * Create new CipherText around already encrypted contents.
 		 *
-		 * @param input the contents
-		 * @param ms
+		 * @param data the encrypted contents, including prefix and integrity byte
 		 */
-		public CipherText(byte[] input, long ms, Rand rand) {
-			this.inputLen = input.length;
-			this.rand = rand;
-			prefix = new byte[32];
-			content = new ArrayList<>();
-			int roundedsize = input.length + (256 - (input.length % 256));
-			for (int i = 0; i < roundedsize / 256; ++i) {
-				content.add(new byte[256]);
-			}
-			totalsize = roundedsize + 5;
-
-			prefix = intToBytes(ms);
-
-			for (int i = 0; i < input.length; ++i)
-				content.get(i / 256)[i % 256] = input[i];
-			byte[] last = content.get(content.size() - 1);
-			last[last.length - 1] = (byte) (256 - (input.length % 256));
-
+		CipherText(byte[] data) {
+			this.data = data;
 		}
 
 		/**
-		 * Convert this Ciptext to a ByteBuffer
+		 * Convert this Ciptext to a ByteBuffer, backed by the encrypted contents
 		 *
 		 * @return contents as bytebuffer
 		 */
 		public ByteBuffer toByteBuffer() {
-			ByteBuffer buff = ByteBuffer.allocate(totalsize).put(prefix);
-			for (int i = 0; i < content.size(); ++i)
-				buff.put(content.get(i));
-
-			buff.put(totalsize - 1, makeIntegrityByte(rand));
-			return buff;
+			return ByteBuffer.wrap(data);
 		}
 	}
-}
\ No newline at end of file
+}
@@ -18,6 +18,10 @@ package com.pokegoapi.util;
 import com.pokegoapi.api.PokemonGo;
 import com.pokegoapi.api.map.Point;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -84,7 +88,8 @@ public class MapUtil<K extends MapPoint> {
 	}
 
 	/**
-	 * Sort items map by distance
+	 * Sort items map by distance. Items at the same distance are all kept, their keys are moved apart by the
+	 * smallest possible step.
 	 *
 	 * @param items the items
 	 * @param api   the api
@@ -93,8 +98,35 @@ public class MapUtil<K extends MapPoint> {
 	public Map<Double, K> sortItems(List<K> items, PokemonGo api) {
 		Map<Double, K> result = new TreeMap<>();
 		for (K point : items) {
-			result.put(distFrom(api.getLatitude(), api.getLongitude(), point.getLatitude(), point.getLongitude()), point);
+			double distance = distFrom(api.getLatitude(), api.getLongitude(), point.getLatitude(), point.getLongitude());
+			while (result.containsKey(distance)) {
+				distance = Math.nextUp(distance);
+			}
+			result.put(distance, point);
 		}
 		return result;
 	}
+
+	/**
+	 * Sorts items by distance, items at the same distance keep their order
+	 *
+	 * @param items the items
+	 * @param latitude the latitude to measure from
+	 * @param longitude the longitude to measure from
+	 * @return the items, nearest first
+	 */
+	public List<K> sortByDistance(List<K> items, final double latitude, final double longitude) {
+		List<K> result = new ArrayList<>(items);
+		final IdentityHashMap<K, Double> distances = new IdentityHashMap<>();
+		for (K point : items) {
+			distances.put(point, distFrom(latitude, longitude, point.getLatitude(), point.getLongitude()));
+		}
+		Collections.sort(result, new Comparator<K>() {
+			@Override
+			public int compare(K first, K second) {
+				return Double.compare(distances.get(first), distances.get(second));
+			}
+		});
+		return result;
+	}
 }
@@ -1,6 +1,9 @@
 package com.pokegoapi.util;
 
+import com.google.protobuf.ByteString;
+
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public class NiaHash {
 	private static final int HASH_SEED = 0x46E945F8;
@@ -14,12 +17,22 @@ public class NiaHash {
 			0x5089C907844C6325L, 0xDF887E97D73C50E3L,
 			0xAE8870787CE3C11DL, 0xA6767D18C58D2117L,
 	};
-	private static final UInt128 ROUND_MAGIC = new UInt128(0x081570AFDD535EC3L, 0xE3F0D44988BCDFABL);
+	private static final long ROUND_MAGIC_LOW = 0x081570AFDD535EC3L;
+	private static final long ROUND_MAGIC_HIGH = 0xE3F0D44988BCDFABL;
 	private static final long FINAL_MAGIC_0 = 0xCE7C4801D683E824L;
 	private static final long FINAL_MAGIC_1 = 0x6823775B1DAAD522L;
 
+	// 32-bit limbs of the round magic, used by the multiply-add between chunks
+	private static final long ROUND_MAGIC_0 = ROUND_MAGIC_LOW & 0xFFFFFFFFL;
+	private static final long ROUND_MAGIC_1 = ROUND_MAGIC_LOW >>> 32;
+	private static final long ROUND_MAGIC_2 = ROUND_MAGIC_HIGH & 0xFFFFFFFFL;
+	private static final long ROUND_MAGIC_3 = ROUND_MAGIC_HIGH >>> 32;
+
+	private static final int SEED_LENGTH = 4;
+	private static final long SEED_SALT = toSalt(HASH_SEED);
+
 	public static int hash32(byte[] buffer) {
-		return hash32Salt(buffer, toBytes(HASH_SEED));
+		return fold(computeHash(SEED_SALT, SEED_LENGTH, wrap(buffer)));
 	}
 
 	/**
@@ -30,12 +43,22 @@ public class NiaHash {
 	 * @return hash for given inputs
 	 */
 	public static int hash32Salt(byte[] buffer, byte[] salt) {
-		long result = hash64Salt(buffer, salt);
-		return (int) ((result & 0xFFFFFFFFL) ^ (result >>> 32));
+		return fold(hash64Salt(buffer, salt));
+	}
+
+	/**
+	 * Computes 32-bit hash with salt over the remaining bytes of the given buffer, without changing its position
+	 *
+	 * @param buffer input to the hash function
+	 * @param salt salt for the hash function
+	 * @return hash for given inputs
+	 */
+	public static int hash32Salt(ByteBuffer buffer, byte[] salt) {
+		return fold(hash64Salt(buffer, salt));
 	}
 
 	public static long hash64(byte[] buffer) {
-		return hash64Salt(buffer, toBytes(HASH_SEED));
+		return computeHash(SEED_SALT, SEED_LENGTH, wrap(buffer));
 	}
 
 	/**
@@ -46,15 +69,43 @@ public class NiaHash {
 	 * @return hash for given inputs
 	 */
 	public static long hash64Salt(byte[] buffer, byte[] salt) {
-		byte[] newBuffer = new byte[buffer.length + salt.length];
-		System.arraycopy(salt, 0, newBuffer, 0, salt.length);
-		System.arraycopy(buffer, 0, newBuffer, salt.length, buffer.length);
-		return computeHash(newBuffer, newBuffer.length);
+		if (salt.length > 8) {
+			return hash64Salt(wrap(buffer), salt);
+		}
+		return computeHash(toSalt(salt), salt.length, wrap(buffer));
+	}
+
+	/**
+	 * Computes 64-bit hash with salt over the remaining bytes of the given buffer, without changing its position
+	 *
+	 * @param buffer input to the hash function
+	 * @param salt salt for the hash function
+	 * @return hash for given inputs
+	 */
+	public static long hash64Salt(ByteBuffer buffer, byte[] salt) {
+		ByteBuffer input = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		if (salt.length > 8) {
+			// only short salts are prepended virtually, longer ones are copied in front of the input
+			ByteBuffer salted = ByteBuffer.allocate(salt.length + input.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+			salted.put(salt).put(input).flip();
+			return computeHash(0L, 0, salted);
+		}
+		return computeHash(toSalt(salt), salt.length, input);
+	}
+
+	/**
+	 * Computes 64-bit hash with salt over the given bytes, without copying them
+	 *
+	 * @param buffer input to the hash function
+	 * @param salt salt for the hash function
+	 * @return hash for given inputs
+	 */
+	public static long hash64Salt(ByteString buffer, byte[] salt) {
+		return hash64Salt(buffer.asReadOnlyByteBuffer(), salt);
 	}
 
 	public static long hash64Salt64(byte[] buffer, long salt) {
-		byte[] saltBytes = ByteBuffer.allocate(8).putLong(salt).array();
-		return hash64Salt(buffer, saltBytes);
+		return computeHash(Long.reverseBytes(salt), 8, wrap(buffer));
 	}
 
 	/**
@@ -65,44 +116,86 @@ public class NiaHash {
 	 * @return hash for given input
 	 */
 	public static long computeHash(byte[] in, int length) {
-		int chunkCount = length >> 7;
+		return computeHash(0L, 0, ByteBuffer.wrap(in, 0, length).order(ByteOrder.LITTLE_ENDIAN));
+	}
 
-		// copy tail, pad with zeroes
-		// TODO: try to avoid memcopy (work in place)
-		byte[] tail = new byte[128];
+	/**
+	 * Computes the hash of the salt followed by the remaining bytes of the input. The salt is never copied in front
+	 * of the input, words that overlap it are assembled from both instead.
+	 *
+	 * @param salt up to 8 salt bytes, the first one in the lowest byte
+	 * @param saltLength number of salt bytes
+	 * @param in little endian input, hashed from its position up to its limit
+	 * @return hash for given input
+	 */
+	private static long computeHash(long salt, int saltLength, ByteBuffer in) {
+		int base = in.position() - saltLength;
+		int length = saltLength + in.remaining();
+		int chunkCount = length >> 7;
 		int tailSize = length & 0x7F;
-		System.arraycopy(in, length - tailSize, tail, 0, tailSize);
+		int blockCount = chunkCount + (tailSize != 0 || chunkCount == 0 ? 1 : 0);
 
-		UInt128 hash;
-		if (chunkCount != 0) {
-			hash = hashChunk(in, 128, 0); // Hash the first 128 bytes
-		} else {
-			hash = hashChunk(tail, tailSize, 0); // Hash the tail
-		}
+		long hashLow = 0L;
+		long hashHigh = 0L;
+		for (int block = 0; block < blockCount; block++) {
+			int start = block << 7;
+			int size = block < chunkCount ? 128 : tailSize;
 
-		hash = hash.add(ROUND_MAGIC);
-		int offset = 0;
-		if (chunkCount != 0) {
-			while (--chunkCount != 0) {
-				offset += 128;
-				hash = hashMulAdd(hash, ROUND_MAGIC, hashChunk(in, 128, offset));
+			// Hash the chunk, a tail is padded with zeroes
+			long chunkLow = 0L;
+			long chunkHigh = 0L;
+			for (int offset = 0; offset < size; offset += 16) {
+				long even = readInt64(in, base, salt, saltLength, length, start + offset)
+						+ MAGIC_TABLE[offset >> 3];
+				long odd = readInt64(in, base, salt, saltLength, length, start + offset + 8)
+						+ MAGIC_TABLE[(offset >> 3) + 1];
+				long mulLow = even * odd;
+				long mulHigh = multiplyHigh(even, odd);
+				boolean carry = carry(chunkLow, mulLow, chunkLow + mulLow);
+				chunkLow += mulLow;
+				chunkHigh += mulHigh + (carry ? 1L : 0L);
 			}
-			if (tailSize != 0) {
-				hash = hashMulAdd(hash, ROUND_MAGIC, hashChunk(tail, tailSize, 0));
+			chunkHigh = chunkHigh << 2 >>> 2;
+
+			if (block == 0) {
+				boolean carry = carry(chunkLow, ROUND_MAGIC_LOW, chunkLow + ROUND_MAGIC_LOW);
+				hashLow = chunkLow + ROUND_MAGIC_LOW;
+				hashHigh = chunkHigh + ROUND_MAGIC_HIGH + (carry ? 1L : 0L);
+				continue;
 			}
-		}
 
-		// Finalize the hash
-		hash.add(new UInt128(0, tailSize * 8));
-		UInt128 temporary = new UInt128(hash);
-		temporary.add(new UInt128(1L, 0L));
-		if (temporary.high < 0) {
-			hash = temporary;
+			long h0 = hashLow & 0xFFFFFFFFL;
+			long h1 = hashLow >>> 32;
+			long h2 = hashHigh & 0xFFFFFFFFL;
+			long h3 = hashHigh >>> 32;
+
+			/* Column sums, before carry */
+			long c0 = (h0 * ROUND_MAGIC_0);
+			long c1 = (h0 * ROUND_MAGIC_1) + (h1 * ROUND_MAGIC_0);
+			long c2 = (h0 * ROUND_MAGIC_2) + (h1 * ROUND_MAGIC_1) + (h2 * ROUND_MAGIC_0);
+			long c3 = (h0 * ROUND_MAGIC_3) + (h1 * ROUND_MAGIC_2) + (h2 * ROUND_MAGIC_1) + (h3 * ROUND_MAGIC_0);
+			long c4 = (h1 * ROUND_MAGIC_3) + (h2 * ROUND_MAGIC_2) + (h3 * ROUND_MAGIC_1);
+			long c5 = (h2 * ROUND_MAGIC_3) + (h3 * ROUND_MAGIC_2);
+			long c6 = (h3 * ROUND_MAGIC_3);
+
+			/* Combine, add, and carry (bugs included) */
+			long r2 = c2 + (c6 << 1) + chunkHigh;
+			long r3 = c3 + (r2 >>> 32);
+
+			long r0 = c0 + (c4 << 1) + (chunkLow & 0xFFFFFFFFL) + (r3 >>> 31);
+			long r1 = c1 + (c5 << 1) + (chunkLow >>> 32) + (r0 >>> 32);
+
+			// no carry during addition as bit63 = 0
+			hashLow = (r1 << 32) | (r0 & 0xFFFFFFFFL);
+			hashHigh = ((r3 << 33 >>> 1) | (r2 & 0xFFFFFFFFL)) + (r1 >>> 32);
 		}
-		hash.clearHighBits(1);
 
-		long hashHigh = hash.high;
-		long hashLow = hash.low;
+		// Finalize the hash, neither addition can carry into the high half
+		hashHigh += tailSize * 8;
+		if (hashHigh < 0) {
+			hashLow++;
+		}
+		hashHigh = hashHigh << 1 >>> 1;
 
 		long hash1 = hashHigh + (hashLow >>> 32);
 		hash1 = ((hash1 + (hash1 >>> 32) + 1L) >>> 32) + hashHigh;
@@ -118,76 +211,97 @@ public class NiaHash {
 			magicHash2 += 0x101L;
 		}
 
-		UInt128 unsignedHash = UInt128.multiply(magicHash1, magicHash2);
-		unsignedHash.multiply(0x101L);
-		unsignedHash.multiply(0x101L);
+		long unsignedLow = magicHash1 * magicHash2;
+		long unsignedHigh = multiplyHigh(magicHash1, magicHash2);
+		for (int i = 0; i < 2; i++) {
+			long productLow = unsignedHigh * 0x101L;
+			long productHigh = multiplyHigh(0x101L, unsignedHigh);
+			boolean carry = carry(productLow, unsignedLow, productLow + unsignedLow);
+			unsignedLow += productLow;
+			unsignedHigh = productHigh + (carry ? 1L : 0L);
+		}
 
-		if (unsignedHash.high != 0L) {
-			unsignedHash.add(new UInt128(0x101L, 0));
+		// only the low half is returned, so carries into the high half are dropped from here on
+		if (unsignedHigh != 0L) {
+			unsignedLow += 0x101L;
 		}
-		if (unsignedCompare(0xFFFFFFFFFFFFFEFEL, unsignedHash.low)) {
-			unsignedHash.add(new UInt128(0x101L, 0));
+		if (unsignedCompare(0xFFFFFFFFFFFFFEFEL, unsignedLow)) {
+			unsignedLow += 0x101L;
 		}
 
-		return unsignedHash.low;
+		return unsignedLow;
 	}
 
-	private static UInt128 hashChunk(byte[] chunk, int size, int masterOffset) {
-		UInt128 hash = new UInt128(0L, 0L);
-		for (int i = 0; i < 8; i++) {
-			int offset = i * 16;
-			if (offset >= size) {
-				break;
-			}
-			long first = readInt64(chunk, masterOffset + offset);
-			long second = readInt64(chunk, masterOffset + offset + 8);
-			long even = first + (MAGIC_TABLE[i * 2]);
-			long odd = second + (MAGIC_TABLE[i * 2 + 1]);
-			UInt128 mul = UInt128.multiply(even, odd);
-			hash.add(mul);
+	/**
+	 * Reads the little endian 64-bit word at the given offset of the salted input, padded with zeroes
+	 * 01, 02, 03, 04, 05, 06, 07, 08 -> 0x0807060504030201
+	 */
+	private static long readInt64(ByteBuffer in, int base, long salt, int saltLength, int length, int offset) {
+		if (offset >= saltLength && offset + 8 <= length) {
+			return in.getLong(base + offset);
 		}
-		return hash.clearHighBits(2);
-	}
-
-	private static UInt128 hashMulAdd(UInt128 hash, UInt128 mul, UInt128 add) {
-		long a0 = add.low & 0xFFFFFFFFL;
-		long a1 = add.low >>> 32;
-		long a23 = add.high;
-		long m0 = mul.low & 0xFFFFFFFFL;
-		long m1 = mul.low >>> 32;
-		long m2 = mul.high & 0xFFFFFFFFL;
-		long m3 = mul.high >>> 32;
-		long h0 = hash.low & 0xFFFFFFFFL;
-		long h1 = hash.low >>> 32;
-		long h2 = hash.high & 0xFFFFFFFFL;
-		long h3 = hash.high >>> 32;
-
-		/* Column sums, before carry */
-		long c0 = (h0 * m0);
-		long c1 = (h0 * m1) + (h1 * m0);
-		long c2 = (h0 * m2) + (h1 * m1) + (h2 * m0);
-		long c3 = (h0 * m3) + (h1 * m2) + (h2 * m1) + (h3 * m0);
-		long c4 = (h1 * m3) + (h2 * m2) + (h3 * m1);
-		long c5 = (h2 * m3) + (h3 * m2);
-		long c6 = (h3 * m3);
-
-		/* Combine, add, and carry (bugs included) */
-		long r2 = c2 + (c6 << 1) + a23;
-		long r3 = c3 + (r2 >>> 32);
-
-		long r0 = c0 + (c4 << 1) + a0 + (r3 >>> 31);
-		long r1 = c1 + (c5 << 1) + a1 + (r0 >>> 32);
-
-		/* Return as uint128_t */
-		// no carry during addition as bit63 = 0
-		return new UInt128((r1 << 32) | (r0 & 0xFFFFFFFFL), ((r3 << 33 >>> 1) | (r2 & 0xFFFFFFFFL)) + (r1 >>> 32));
-	}
-
-	private static long readInt64(byte[] bytes, int offset) { // 01, 02, 03, 04, 05, 06, 07, 08 -> 0x0807060504030201
-		// endian-safe read 64-bit integer
 		long value = 0;
 		for (int i = 7; i >= 0; i--) {
-			value = (value << 8) | (bytes[offset + i] & 0xFF);
+			int index = offset + i;
+			long current = 0;
+			if (index < saltLength) {
+				current = (salt >>> (index << 3)) & 0xFF;
+			} else if (index < length) {
+				current = in.get(base + index) & 0xFF;
+			}
+			value = (value << 8) | current;
+		}
+		return value;
+	}
+
+	/**
+	 * Carry of a 128-bit addition, given both low halves and their sum. This reproduces the original
+	 * implementation, which misses the carry when the sum is 0.
+	 */
+	private static boolean carry(long first, long second, long sum) {
+		boolean sx = first < 0;
+		boolean sy = second < 0;
+		return sx && sy || (sum > 0 && (sx || sy));
+	}
+
+	/**
+	 * @return the upper 64 bits of the unsigned 128-bit product
+	 */
+	private static long multiplyHigh(long first, long second) {
+		long secondLow = second & 0xFFFFFFFFL;
+		long secondHigh = second >>> 32;
+		long firstLow = first & 0xFFFFFFFFL;
+		long firstHigh = first >>> 32;
+
+		long high = secondHigh * firstHigh;
+
+		long p01 = firstLow * secondHigh;
+		long p10 = firstHigh * secondLow;
+		long p00 = firstLow * secondLow;
+
+		high += (p01 >>> 32);
+		high += (p10 >>> 32);
+
+		long p2 = (p00 >>> 32) + (p01 & 0xFFFFFFFFL) + (p10 & 0xFFFFFFFFL);
+		return high + (p2 >>> 32);
+	}
+
+	private static int fold(long hash) {
+		return (int) ((hash & 0xFFFFFFFFL) ^ (hash >>> 32));
+	}
+
+	private static ByteBuffer wrap(byte[] buffer) {
+		return ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static long toSalt(int value) {
+		return Integer.reverseBytes(value) & 0xFFFFFFFFL;
+	}
+
+	private static long toSalt(byte[] salt) {
+		long value = 0;
+		for (int i = salt.length - 1; i >= 0; i--) {
+			value = (value << 8) | (salt[i] & 0xFF);
 		}
 		return value;
 	}
@@ -210,4 +324,4 @@ public class NiaHash {
 		ret[0] = (byte) ((value >> 24) & 0xFF);
 		return ret;
 	}
-}
\ No newline at end of file
+}
@@ -15,19 +15,30 @@
 
 package com.pokegoapi.util;
 
+import POGOProtos.Networking.Envelopes.AuthTicketOuterClass.AuthTicket;
 import POGOProtos.Networking.Envelopes.RequestEnvelopeOuterClass;
 import POGOProtos.Networking.Envelopes.SignatureOuterClass;
 import POGOProtos.Networking.Platform.PlatformRequestTypeOuterClass;
 import POGOProtos.Networking.Platform.Requests.SendEncryptedSignatureRequestOuterClass;
+import POGOProtos.Networking.Requests.RequestOuterClass.Request;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
 import com.pokegoapi.api.PokemonGo;
 import com.pokegoapi.api.device.LocationFixes;
 import com.pokegoapi.exceptions.RemoteServerException;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Random;
 
 public class Signature {
+	// scratch buffer the requests are serialized into for hashing, grown on demand
+	private static final ThreadLocal<byte[]> REQUEST_BUFFER = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[256];
+		}
+	};
 
 	/**
 	 * Given a fully built request, set the signature correctly.
@@ -37,28 +48,41 @@ public class Signature {
 	 */
 	public static void setSignature(PokemonGo api, RequestEnvelopeOuterClass.RequestEnvelope.Builder builder)
 			throws RemoteServerException {
+		if (builder.getAuthTicket() == null) {
+			return;
+		}
+		setSignature(api, builder, new TicketSeeds(builder.getAuthTicket()));
+	}
 
+	/**
+	 * Given a fully built request, set the signature correctly using hash seeds derived from its auth ticket before.
+	 *
+	 * @param api the api
+	 * @param builder the requestenvelop builder
+	 * @param seeds the seeds of the auth ticket set on the builder
+	 */
+	public static void setSignature(PokemonGo api, RequestEnvelopeOuterClass.RequestEnvelope.Builder builder,
+			TicketSeeds seeds) throws RemoteServerException {
 		if (builder.getAuthTicket() == null) {
 			return;
 		}
+		if (!seeds.isFor(builder.getAuthTicket())) {
+			seeds = new TicketSeeds(builder.getAuthTicket());
+		}
 
-		byte[] authTicket = builder.getAuthTicket().toByteArray();
 		long currentTime = api.currentTimeMillis();
 		long timeSince = currentTime - api.getStartTime();
 
 		Random random = new Random();
 
 		SignatureOuterClass.Signature.Builder sigBuilder;
-		sigBuilder = SignatureOuterClass.Signature.newBuilder()
-				.setLocationHash1(getLocationHash1(api, authTicket))
+		sigBuilder = SignatureOuterClass.Signature.newBuilder(api.getSignatureTemplate())
+				.setLocationHash1(getLocationHash1(api, seeds))
 				.setLocationHash2(getLocationHash2(api))
 				.setTimestamp(currentTime)
 				.setTimestampSinceStart(timeSince)
-				.setDeviceInfo(api.getDeviceInfo())
 				.setActivityStatus(api.getActivitySignature(random))
-				.addAllLocationFix(LocationFixes.getDefault(api, builder, currentTime, random))
-				.setSessionHash(ByteString.copyFrom(api.getSessionHash()))
-				.setUnknown25(Constant.UNK25);
+				.addAllLocationFix(LocationFixes.getDefault(api, builder, currentTime, random));
 
 		SignatureOuterClass.Signature.SensorInfo sensorInfo = api.getSensorSignature(currentTime, random);
 		if (sensorInfo != null) {
@@ -66,7 +90,7 @@ public class Signature {
 		}
 
 		for (int i = 0; i < builder.getRequestsList().size(); i++) {
-			sigBuilder.addRequestHash(getRequestHash(builder.getRequests(i).toByteArray(), authTicket));
+			sigBuilder.addRequestHash(getRequestHash(builder.getRequests(i), seeds));
 		}
 
 		SignatureOuterClass.Signature signature = sigBuilder.build();
@@ -99,13 +123,12 @@ public class Signature {
 		};
 	}
 
-	private static int getLocationHash1(PokemonGo api, byte[] authTicket) {
+	private static int getLocationHash1(PokemonGo api, TicketSeeds seeds) {
 		byte[] bytes = new byte[24];
 		System.arraycopy(getBytes(api.getLatitude()), 0, bytes, 0, 8);
 		System.arraycopy(getBytes(api.getLongitude()), 0, bytes, 8, 8);
 		System.arraycopy(getBytes(api.getAccuracy()), 0, bytes, 16, 8);
-		int seed = NiaHash.hash32(authTicket);
-		return NiaHash.hash32Salt(bytes, NiaHash.toBytes(seed));
+		return NiaHash.hash32Salt(bytes, seeds.locationSeed);
 	}
 
 	private static int getLocationHash2(PokemonGo api) {
@@ -117,8 +140,50 @@ public class Signature {
 		return NiaHash.hash32(bytes);
 	}
 
-	private static long getRequestHash(byte[] request, byte[] authTicket) {
-		byte[] seed = ByteBuffer.allocate(8).putLong(NiaHash.hash64(authTicket)).array();
-		return NiaHash.hash64Salt(request, seed);
+	private static long getRequestHash(Request request, TicketSeeds seeds) throws RemoteServerException {
+		int size = request.getSerializedSize();
+		byte[] buffer = REQUEST_BUFFER.get();
+		if (buffer.length < size) {
+			buffer = new byte[Math.max(size, buffer.length * 2)];
+			REQUEST_BUFFER.set(buffer);
+		}
+		try {
+			request.writeTo(CodedOutputStream.newInstance(buffer, 0, size));
+		} catch (IOException e) {
+			throw new RemoteServerException("Failed to serialize request for hashing", e);
+		}
+		return NiaHash.hash64Salt(ByteBuffer.wrap(buffer, 0, size), seeds.requestSeed);
+	}
+
+	/**
+	 * Hash seeds derived from an auth ticket. The ticket only changes every ~30 minutes, while its seeds are
+	 * needed for every request of every envelope, so they are computed once per ticket.
+	 */
+	public static class TicketSeeds {
+		private final AuthTicket authTicket;
+		private final byte[] locationSeed;
+		private final byte[] requestSeed;
+
+		/**
+		 * Derives the hash seeds of the given auth ticket.
+		 *
+		 * @param authTicket the auth ticket
+		 */
+		public TicketSeeds(AuthTicket authTicket) {
+			this.authTicket = authTicket;
+			byte[] bytes = authTicket.toByteArray();
+			this.locationSeed = NiaHash.toBytes(NiaHash.hash32(bytes));
+			this.requestSeed = ByteBuffer.allocate(8).putLong(NiaHash.hash64(bytes)).array();
+		}
+
+		/**
+		 * Checks whether these seeds were derived from the given auth ticket.
+		 *
+		 * @param authTicket the auth ticket
+		 * @return true if the seeds belong to the given ticket
+		 */
+		public boolean isFor(AuthTicket authTicket) {
+			return this.authTicket == authTicket || this.authTicket.equals(authTicket);
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,244 @@
+/*
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pokegoapi.util;
+
+import com.pokegoapi.google.common.geometry.S1Angle;
+import com.pokegoapi.google.common.geometry.S2Cap;
+import com.pokegoapi.google.common.geometry.S2CellId;
+import com.pokegoapi.google.common.geometry.S2LatLng;
+import com.pokegoapi.google.common.geometry.S2RegionCoverer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Indexes map points by their S2 leaf cell, so points within a radius or the nearest points can be found without
+ * computing the distance to every point. Results are ordered by distance, points at the same distance in the order
+ * they were added, and nothing is dropped because of an equal distance. Adding an item again moves it.
+ *
+ * @param <K> the type of the points
+ */
+public class SpatialIndex<K extends MapPoint> {
+	// same radius as MapUtil.distFrom, so distances match
+	private static final double EARTH_RADIUS = 6371000;
+	// widens the covered cap slightly, so rounding can not miss points right at the radius
+	private static final double COVERING_MARGIN = 1e-9;
+	private static final double INITIAL_NEAREST_RADIUS = 100;
+
+	private static final Comparator<Candidate<?>> ORDER = new Comparator<Candidate<?>>() {
+		@Override
+		public int compare(Candidate<?> first, Candidate<?> second) {
+			int result = Double.compare(first.distance, second.distance);
+			return result != 0 ? result : Long.compare(first.entry.sequence, second.entry.sequence);
+		}
+	};
+
+	private final TreeMap<Long, List<Entry<K>>> cells = new TreeMap<>();
+	private final HashMap<K, Entry<K>> entries = new HashMap<>();
+	private final S2RegionCoverer coverer = new S2RegionCoverer();
+	private long sequence;
+
+	/**
+	 * Creates an empty index
+	 */
+	public SpatialIndex() {
+		coverer.setMaxCells(8);
+	}
+
+	/**
+	 * Creates an index holding the given items
+	 *
+	 * @param items the items to index
+	 */
+	public SpatialIndex(Collection<? extends K> items) {
+		this();
+		addAll(items);
+	}
+
+	/**
+	 * Adds an item at its current location, or moves it there if it was added before
+	 *
+	 * @param item the item
+	 */
+	public synchronized void add(K item) {
+		remove(item);
+		double latitude = item.getLatitude();
+		double longitude = item.getLongitude();
+		long cellId = S2CellId.fromLatLng(S2LatLng.fromDegrees(latitude, longitude)).id();
+		Entry<K> entry = new Entry<>(item, latitude, longitude, cellId, sequence++);
+		entries.put(item, entry);
+		List<Entry<K>> cell = cells.get(cellId);
+		if (cell == null) {
+			cell = new ArrayList<>(1);
+			cells.put(cellId, cell);
+		}
+		cell.add(entry);
+	}
+
+	/**
+	 * Adds all given items
+	 *
+	 * @param items the items
+	 */
+	public synchronized void addAll(Collection<? extends K> items) {
+		for (K item : items) {
+			add(item);
+		}
+	}
+
+	/**
+	 * Removes an item
+	 *
+	 * @param item the item
+	 * @return true if the item was indexed
+	 */
+	public synchronized boolean remove(K item) {
+		Entry<K> entry = entries.remove(item);
+		if (entry == null) {
+			return false;
+		}
+		List<Entry<K>> cell = cells.get(entry.cellId);
+		cell.remove(entry);
+		if (cell.isEmpty()) {
+			cells.remove(entry.cellId);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes all items
+	 */
+	public synchronized void clear() {
+		cells.clear();
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Finds all items within the given distance, nearest first
+	 *
+	 * @param latitude the latitude of the center
+	 * @param longitude the longitude of the center
+	 * @param radius the distance in meters
+	 * @return the items within the radius
+	 */
+	public synchronized List<K> withinRadius(double latitude, double longitude, double radius) {
+		List<Candidate<K>> found = collect(latitude, longitude, radius);
+		Collections.sort(found, ORDER);
+		return toItems(found, found.size());
+	}
+
+	/**
+	 * Finds the given amount of items nearest to a location, nearest first
+	 *
+	 * @param latitude the latitude of the center
+	 * @param longitude the longitude of the center
+	 * @param count how many items to return at most
+	 * @return the nearest items
+	 */
+	public synchronized List<K> nearest(double latitude, double longitude, int count) {
+		if (count <= 0 || entries.isEmpty()) {
+			return new ArrayList<>();
+		}
+		double radius = INITIAL_NEAREST_RADIUS;
+		List<Candidate<K>> found = collect(latitude, longitude, radius);
+		// anything outside the radius is further away than everything found, so enough found means done
+		while (found.size() < count && found.size() < entries.size()) {
+			radius *= 4;
+			found = collect(latitude, longitude, radius);
+		}
+		Collections.sort(found, ORDER);
+		return toItems(found, Math.min(count, found.size()));
+	}
+
+	private List<Candidate<K>> collect(double latitude, double longitude, double radius) {
+		List<Candidate<K>> found = new ArrayList<>();
+		if (radius < 0) {
+			return found;
+		}
+		double angle = radius / EARTH_RADIUS;
+		if (angle >= Math.PI) {
+			for (Entry<K> entry : entries.values()) {
+				found.add(new Candidate<>(entry, entry.distanceFrom(latitude, longitude)));
+			}
+			return found;
+		}
+
+		S2Cap cap = S2Cap.fromAxisAngle(S2LatLng.fromDegrees(latitude, longitude).toPoint(),
+				S1Angle.radians(angle + COVERING_MARGIN));
+		ArrayList<S2CellId> covering = new ArrayList<>();
+		coverer.getCovering(cap, covering);
+		for (S2CellId cellId : covering) {
+			// all leaf cells of a cell lie in one id range, without crossing the sign bit
+			for (List<Entry<K>> cell : cells.subMap(cellId.rangeMin().id(), true, cellId.rangeMax().id(), true)
+					.values()) {
+				for (Entry<K> entry : cell) {
+					double distance = entry.distanceFrom(latitude, longitude);
+					if (distance <= radius) {
+						found.add(new Candidate<>(entry, distance));
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	private List<K> toItems(List<Candidate<K>> candidates, int count) {
+		List<K> items = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			items.add(candidates.get(i).entry.item);
+		}
+		return items;
+	}
+
+	private static class Entry<K> {
+		private final K item;
+		private final double latitude;
+		private final double longitude;
+		private final long cellId;
+		private final long sequence;
+
+		Entry(K item, double latitude, double longitude, long cellId, long sequence) {
+			this.item = item;
+			this.latitude = latitude;
+			this.longitude = longitude;
+			this.cellId = cellId;
+			this.sequence = sequence;
+		}
+
+		double distanceFrom(double latitude, double longitude) {
+			return MapUtil.distFrom(latitude, longitude, this.latitude, this.longitude);
+		}
+	}
+
+	private static class Candidate<K> {
+		private final Entry<K> entry;
+		private final double distance;
+
+		Candidate(Entry<K> entry, double distance) {
+			this.entry = entry;
+			this.distance = distance;
+		}
+	}
+}